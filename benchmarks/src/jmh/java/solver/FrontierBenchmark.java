@@ -0,0 +1,134 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import reader.MapData;
+
+// Frontier implementations on the queue traffic of a real solve
+// The map is solved once while recording every add and poll, then each
+// invocation replays the trace into a fresh queue: the old comparator-based
+// one that recomputes h on every comparison, the cached-f heap or the
+// bucket queue
+@org.openjdk.jmh.annotations.State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FrontierBenchmark {
+  private static final int MAX_TRACE = 4000000;
+
+  @Param({"fiveboxes3", "original1", "original3"})
+  public String map;
+
+  @Param({"LEGACY", "HEAP", "BUCKET"})
+  public String frontier;
+
+  private List<State> trace;
+  private SearchContext context;
+
+  @Setup
+  public void setup() {
+    MapData level = Levels.load(map);
+    List<State> recorded = new ArrayList<>();
+    SokoBot sokoBot = new SokoBot() {
+      @Override
+      Frontier createFrontier() {
+        return new RecordingFrontier(new BucketFrontier(), recorded);
+      }
+    };
+    sokoBot.solveSokobanPuzzle(level.columns, level.rows, level.mapLayer(), level.itemsLayer());
+    trace = recorded;
+
+    Level indexed = Level.of(level.columns, level.rows, level.mapLayer(), level.itemsLayer(), new SolverOptions());
+    context = new SearchContext(sokoBot, indexed, new CancellationToken(), null);
+  }
+
+  @Benchmark
+  public int replay() {
+    Frontier queue = create();
+    for (State state : trace) {
+      if (state == null) queue.poll();
+      else queue.add(state);
+    }
+    return queue.size();
+  }
+
+  private Frontier create() {
+    switch (frontier) {
+      case "LEGACY":
+        // What aStar did before h was cached
+        return new QueueFrontier(new PriorityQueue<>((a, b) ->
+                (a.cost + context.heuristic(a.boxes)) - (b.cost + context.heuristic(b.boxes))));
+      case "HEAP":
+        return new HeapFrontier();
+      default:
+        return new BucketFrontier();
+    }
+  }
+
+  // Passes operations through and logs them, a null entry stands for a poll
+  private static class RecordingFrontier implements Frontier {
+    private final Frontier frontier;
+    private final List<State> trace;
+
+    RecordingFrontier(Frontier frontier, List<State> trace) {
+      this.frontier = frontier;
+      this.trace = trace;
+    }
+
+    @Override
+    public void add(State state) {
+      if (trace.size() < MAX_TRACE) trace.add(state);
+      frontier.add(state);
+    }
+
+    @Override
+    public State poll() {
+      if (trace.size() < MAX_TRACE) trace.add(null);
+      return frontier.poll();
+    }
+
+    @Override
+    public int size() {
+      return frontier.size();
+    }
+  }
+
+  private static class QueueFrontier implements Frontier {
+    private final PriorityQueue<State> queue;
+
+    QueueFrontier(PriorityQueue<State> queue) {
+      this.queue = queue;
+    }
+
+    @Override
+    public void add(State state) {
+      queue.add(state);
+    }
+
+    @Override
+    public State poll() {
+      return queue.poll();
+    }
+
+    @Override
+    public int size() {
+      return queue.size();
+    }
+  }
+}
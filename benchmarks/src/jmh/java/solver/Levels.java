@@ -0,0 +1,20 @@
+package solver;
+
+import java.io.File;
+import java.util.List;
+
+import reader.FileReader;
+import reader.MapData;
+
+// Loads a level from maps/, the build passes its location as sokobot.maps
+final class Levels {
+  private Levels() {
+  }
+
+  static MapData load(String name) {
+    File maps = new File(System.getProperty("sokobot.maps", "maps"));
+    List<MapData> levels = new FileReader().readLevels(new File(maps, name + ".txt"));
+    if (levels == null || levels.isEmpty()) throw new IllegalArgumentException("No level " + name + " in " + maps);
+    return levels.get(0);
+  }
+}
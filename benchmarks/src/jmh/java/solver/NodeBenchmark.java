@@ -0,0 +1,147 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+import reader.MapData;
+
+// Per-node operations of the search, run with the gc profiler so
+// gc.alloc.rate.norm shows the bytes each call allocates
+// The operations cycle over states sampled from a breadth-first walk of the
+// level's push graph, so they see realistic box layouts
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+  private static final int SAMPLES = 1024;
+
+  @Param({"fiveboxes3", "original1"})
+  public String map;
+
+  private SearchContext context;
+  private Board board;
+  private PushGenerator pushes;
+  private State[] states;
+  private State[] successors;
+  private ClosedSet closed;
+  private State[] missing;
+  private int next;
+
+  @Setup
+  public void setup() {
+    MapData level = Levels.load(map);
+    Level indexed = Level.of(level.columns, level.rows, level.mapLayer(), level.itemsLayer(), new SolverOptions());
+    context = new SearchContext(new SokoBot(), indexed, new CancellationToken(), null);
+    State start = context.start(level.itemsLayer());
+    board = indexed.board;
+    pushes = context.getPushGenerator();
+    successors = new State[start.boxes.length * 4];
+
+    // Breadth-first over pushes, everything reached goes in the closed set
+    closed = new ClosedSet(start.boxes.length, 256L << 20);
+    List<State> reached = new ArrayList<>();
+    State initial = pushes.initial(start.player, start.boxes);
+    closed.add(initial.player, initial.boxes, initial.hash);
+    reached.add(initial);
+    for (int head = 0; head < reached.size() && reached.size() < SAMPLES * 16; head++) {
+      int count = pushes.expand(reached.get(head), successors);
+      for (int i = 0; i < count; i++) {
+        if (closed.add(successors[i].player, successors[i].boxes, successors[i].hash)) reached.add(successors[i]);
+      }
+    }
+
+    // Spread the samples over the walk, not just its first layers
+    states = new State[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      states[i] = reached.get((int) ((long) i * reached.size() / SAMPLES));
+    }
+
+    // Same layouts with the player somewhere else, so lookups also miss
+    missing = new State[SAMPLES];
+    for (int i = 0; i < SAMPLES; i++) {
+      State state = states[i];
+      int player = (state.player + 1) % board.cellCount;
+      long hash = state.hash ^ board.playerKeys[state.player] ^ board.playerKeys[player];
+      missing[i] = new State(player, state.boxes, hash, state.cost, state.move);
+    }
+  }
+
+  private State nextState() {
+    next = (next + 1) & (SAMPLES - 1);
+    return states[next];
+  }
+
+  // Step expansion, one player move in each direction
+  @Benchmark
+  public int move() {
+    State state = nextState();
+    int generated = 0;
+    for (int i = 0; i < 4; i++) {
+      if (context.move(state, i) != null) generated++;
+    }
+    return generated;
+  }
+
+  // Push expansion, what the default search does per node
+  @Benchmark
+  public int expand() {
+    return pushes.expand(nextState(), successors);
+  }
+
+  @Benchmark
+  public int heuristic() {
+    return context.heuristic(nextState().boxes);
+  }
+
+  @Benchmark
+  public int heuristicAfterPush() {
+    State state = nextState();
+    int pushed = 0;
+    for (int box = 0; box < state.boxes.length; box++) {
+      int from = state.boxes[box];
+      int to = board.next[from * 4 + Board.RIGHT];
+      if (board.isBoxStuck(to, state.boxes)) continue;
+      pushed += context.heuristicAfterPush(state, box, from, to);
+    }
+    return pushed;
+  }
+
+  @Benchmark
+  public int isBoxStuck() {
+    State state = nextState();
+    int stuck = 0;
+    for (short box : state.boxes) {
+      for (int i = 0; i < 4; i++) {
+        if (context.isBoxStuck(board.next[box * 4 + i], state.boxes)) stuck++;
+      }
+    }
+    return stuck;
+  }
+
+  @Benchmark
+  public boolean closedSetHit() {
+    State state = nextState();
+    return closed.contains(state.player, state.boxes, state.hash);
+  }
+
+  @Benchmark
+  public boolean closedSetMiss() {
+    State state = missing[next = (next + 1) & (SAMPLES - 1)];
+    return closed.contains(state.player, state.boxes, state.hash);
+  }
+}
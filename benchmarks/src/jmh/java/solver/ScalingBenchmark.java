@@ -0,0 +1,55 @@
+package solver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import reader.MapData;
+
+// Scaling of the parallel solver: the same solve with 1 to 16 workers, the
+// speedup is the one-worker score over the others
+// Only meaningful with at least as many cores as workers, on fewer it
+// measures the cost of the extra threads instead. No multi-core run of it
+// has been recorded yet.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+  @Param({"fiveboxes3", "original1", "original3"})
+  public String map;
+
+  @Param({"1", "2", "4", "8", "16"})
+  public int threads;
+
+  private SolverOptions options;
+  private MapData level;
+  private char[][] mapData;
+  private char[][] itemsData;
+
+  @Setup
+  public void setup() {
+    level = Levels.load(map);
+    mapData = level.mapLayer();
+    itemsData = level.itemsLayer();
+    options = new SolverOptions();
+    options.threads = threads;
+  }
+
+  @Benchmark
+  public String solve() {
+    return new SokoBot(options).solveSokobanPuzzle(level.columns, level.rows, mapData, itemsData);
+  }
+}
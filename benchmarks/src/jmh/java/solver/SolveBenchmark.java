@@ -0,0 +1,61 @@
+package solver;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import reader.MapData;
+
+// End-to-end solveSokobanPuzzle per map and search algorithm, otherwise
+// with the default options
+// original2 and original3 are left out until the solver finishes them,
+// they run into the memory budget instead
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SolveBenchmark {
+  @Param({"twoboxes1", "twoboxes2", "twoboxes3", "threeboxes1", "threeboxes2", "threeboxes3",
+          "fourboxes1", "fourboxes2", "fourboxes3", "fiveboxes1", "fiveboxes2", "fiveboxes3",
+          "original1", "testlevel"})
+  public String map;
+
+  @Param({"ASTAR", "IDA_STAR"})
+  public SolverOptions.Algorithm algorithm;
+
+  // Pattern databases come from the cache after the first solve, as in repeated runs
+  @Param({"MATCHING", "PATTERN_DATABASE"})
+  public SolverOptions.Heuristic heuristic;
+
+  private SolverOptions options;
+  private MapData level;
+  private char[][] mapData;
+  private char[][] itemsData;
+
+  @Setup
+  public void setup() {
+    level = Levels.load(map);
+    mapData = level.mapLayer();
+    itemsData = level.itemsLayer();
+    options = new SolverOptions();
+    options.algorithm = algorithm;
+    options.heuristic = heuristic;
+  }
+
+  @Benchmark
+  public String solve() {
+    return new SokoBot(options).solveSokobanPuzzle(level.columns, level.rows, mapData, itemsData);
+  }
+}
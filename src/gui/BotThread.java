@@ -1,6 +1,11 @@
 package gui;
 
+import solver.CancellationToken;
+import solver.SearchStatistics;
 import solver.SokoBot;
+import solver.SolutionCache;
+import solver.SolveResult;
+import solver.SolverOptions;
 
 public class BotThread extends Thread {
   private SokoBot sokoBot;
@@ -8,23 +13,54 @@ public class BotThread extends Thread {
   private int height;
   private char[][] mapData;
   private char[][] itemsData;
+  private CancellationToken token;
 
-  private String solution = null;
+  private volatile SolveResult result = null;
+  private volatile SearchStatistics progress = null;
+  private volatile String best = null; // latest anytime solution
 
-  public BotThread(int width, int height, char[][] mapData, char[][] itemsData) {
-    sokoBot = new SokoBot();
+  // cache may be null, the caller owns it and closes it
+  public BotThread(int width, int height, char[][] mapData, char[][] itemsData, long timeLimit,
+                   SolutionCache cache) {
+    // Anytime, so a solution exists long before the limit and only gets shorter
+    SolverOptions options = new SolverOptions();
+    options.algorithm = SolverOptions.Algorithm.ANYTIME;
+    sokoBot = new SokoBot(options);
     this.width = width;
     this.height = height;
     this.mapData = mapData;
     this.itemsData = itemsData;
+    this.token = CancellationToken.withTimeout(timeLimit);
+    sokoBot.setProgressListener(progress -> this.progress = progress);
+    sokoBot.setSolutionListener((solution, bound) -> this.best = solution);
+    sokoBot.setSolutionCache(cache);
   }
 
   @Override
   public void run() {
-    solution = sokoBot.solveSokobanPuzzle(width, height, mapData, itemsData);
+    result = sokoBot.solve(width, height, mapData, itemsData, token);
+  }
+
+  // Stops the search, the thread ends at the solver's next check
+  public void cancel() {
+    token.cancel();
+  }
+
+  public SolveResult getResult() {
+    return result;
+  }
+
+  // Latest snapshot of the running search, null until the first one arrives
+  public SearchStatistics getProgress() {
+    return progress;
+  }
+
+  // Best solution found so far, null until the first one
+  public String getBestSolution() {
+    return best;
   }
 
   public String getSolution() {
-    return solution;
+    return result == null ? null : result.solution;
   }
 }
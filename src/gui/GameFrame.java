@@ -4,6 +4,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JFrame;
 
 import reader.MapData;
+import solver.SolutionCache;
 import java.awt.*;  
 
 public class GameFrame extends JFrame {
@@ -40,6 +41,11 @@ public class GameFrame extends JFrame {
     this.mainPanel.initiateSolution();
   }
 
+  // Solutions the bot reuses and adds to, null turns it off
+  public void setSolutionCache(SolutionCache cache) {
+    this.mainPanel.setSolutionCache(cache);
+  }
+
   public void restart ()
   {
     this.mainPanel.loadMap(mapData);
@@ -16,6 +16,8 @@ import java.io.File;
 
 import javax.imageio.ImageIO;
 import reader.MapData;
+import solver.SolutionCache;
+import solver.SolveResult;
 
 public class GamePanel extends JPanel implements KeyListener, ActionListener {
 
@@ -51,11 +53,13 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
   private final String STATUS_WAITING_FOR_SPACE = "Push SPACE to start Bot...";
   private final String STATUS_WAITING_FOR_SOLUTION = "Waiting for solution...";
   private final String STATUS_SOLUTION_TIMEOUT = "TIME'S UP! Bot took too long thinking...";
+  private final String STATUS_NO_SOLUTION = "Bot found no solution...";
   private final String STATUS_PLAYING_SOLUTION = "Playing solution...";
   private final String STATUS_FINISHED_PLAYING_SOLUTION = "SOLUTION FINISHED!";
   private final String STATUS_FREE_PLAY = "FREE PLAY MODE!";
 
   private String solutionTimeString = "";
+  private String searchRateString = "";
 
   private int progress = 0;
   private int moves = 0;
@@ -64,6 +68,7 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
   private int playerCount = 0;
 
   private BotThread solutionThread;
+  private SolutionCache solutionCache; // null unless the bot was started with --cache
   private Timer solutionTimer;
   private Timer checkForSolutionTimer;
   private long solutionStartTime;
@@ -80,6 +85,11 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
     this.statusValueFont = new Font("SansSerif", Font.PLAIN, 16);
   }
 
+  // Shared by every solve the bot starts, so replaying a level is instant
+  public void setSolutionCache(SolutionCache solutionCache) {
+    this.solutionCache = solutionCache;
+  }
+
   private void loadImages() {
     try {
       BRICK_SPRITE = ImageIO.read(new File("src/graphics/brick.png"));
@@ -209,6 +219,7 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
       g.setFont(this.statusValueFont);
       g.drawString("" + moves, 80, this.getHeight() - 12);
       g.drawString(progress + " / " + boxCount, 286, this.getHeight() - 12);
+      g.drawString(this.searchRateString, this.getWidth() - 170, this.getHeight() - 12);
       g.drawString(this.solutionTimeString, this.getWidth() - 60, this.getHeight() - 12);
     }
   }
@@ -329,7 +340,8 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
           }
         }
 
-        solutionThread = new BotThread(columns, rows, mapDataCopy, itemsDataCopy);
+        solutionThread = new BotThread(columns, rows, mapDataCopy, itemsDataCopy, SOLUTION_TIME_LIMIT,
+                solutionCache);
         solutionThread.start();
         solutionStartTime = System.nanoTime();
         solutionTimer = new Timer(SOLUTION_TIME_LIMIT, this);
@@ -391,22 +403,39 @@ public class GamePanel extends JPanel implements KeyListener, ActionListener {
       }
     } else if (e.getSource() == checkForSolutionTimer) {
       if (!solutionThread.isAlive()) {
-        // Solution was found
         solutionTimer.stop();
         checkForSolutionTimer.stop();
-        String solution = solutionThread.getSolution();
-        this.playSolution(solution);
+        SolveResult result = solutionThread.getResult();
+        this.searchRateString = "";
+        if (!result.solution.isEmpty()) {
+          // Solution was found, or the anytime search's best when time ran out
+          this.playSolution(result.solution);
+        } else if (result.status == SolveResult.Status.TIMED_OUT) {
+          this.statusString = STATUS_SOLUTION_TIMEOUT;
+        } else {
+          this.statusString = STATUS_NO_SOLUTION;
+        }
+      } else if (solutionThread.getProgress() != null) {
+        // Live search rate, cleared again once the bot is done
+        this.searchRateString = String.format("%.0fk n/s", solutionThread.getProgress().nodesPerSecond() / 1000);
       }
       long elapsedSolutionTime = System.nanoTime() - solutionStartTime;
       this.solutionTimeString = String.format("%.2f", elapsedSolutionTime / 1000000000.0) + "s";
       this.repaint();
     } else if (e.getSource() == solutionTimer) {
-      // Solution was not found
+      // Out of time, stop the bot so it frees its memory and play the best it had
       solutionTimer.stop();
       checkForSolutionTimer.stop();
+      solutionThread.cancel();
+      this.searchRateString = "";
       long elapsedSolutionTime = System.nanoTime() - solutionStartTime;
       this.solutionTimeString = String.format("%.2f", elapsedSolutionTime / 1000000000.0);
-      this.statusString = STATUS_SOLUTION_TIMEOUT;
+      String best = solutionThread.getBestSolution();
+      if (best != null) {
+        this.playSolution(best);
+      } else {
+        this.statusString = STATUS_SOLUTION_TIMEOUT;
+      }
       this.repaint();
     }
   }
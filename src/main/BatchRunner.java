@@ -0,0 +1,285 @@
+package main;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import reader.LevelReader;
+import reader.MapData;
+import solver.CancellationToken;
+import solver.ProgressLog;
+import solver.SokoBot;
+import solver.SolutionCache;
+import solver.SolutionReplay;
+import solver.SolveResult;
+import solver.SolverOptions;
+
+// Headless batch solving, no Swing involved
+// Solves every level of a directory or collection file and prints one
+// report row per level plus throughput and latency percentiles, as CSV or JSON.
+public class BatchRunner {
+  private static final String USAGE = "Usage: Driver <maps directory or level file> batch [options]\n"
+          + "  --format csv|json   report format (default csv)\n"
+          + "  --output <file>     write the report to a file instead of stdout\n"
+          + "  --jobs <n>          levels solved at the same time (default 1)\n"
+          + "  --threads <n>       solver threads per level (default 1)\n"
+          + "  --timeout <ms>      time limit per level (default 15000)\n"
+          + "  --algorithm <name>  ASTAR, IDA_STAR, BIDIRECTIONAL, EXTERNAL or ANYTIME\n"
+          + "  --heuristic <name>  MANHATTAN, PUSH_DISTANCE, MATCHING or PATTERN_DATABASE\n"
+          + "  --weight <w>        f = g + w * h (default 1)\n"
+          + "  --prune <stages>    deadlock tests to run, any of dead,freeze,corral (default dead,freeze)\n"
+          + "  --macros <kinds>    macro moves to use, any of tunnel,room (default tunnel,room)\n"
+          + "  --external-dir <d> where EXTERNAL keeps its files (default the temporary directory)\n"
+          + "  --optimize <ms>     time to shorten each solution, 0 turns it off (default 100)\n"
+          + "  --cache <file>      reuse solutions stored in the file and add new ones to it\n"
+          + "  --progress          log search progress and anytime solutions of each level to stderr";
+
+  private static final int CACHED_LEVELS = 1024; // solutions --cache keeps in memory
+
+  private static class Row {
+    String level;
+    SolveResult result;
+    int moves;
+    int pushes;
+    boolean valid; // the solution replays legally and solves the level
+    double millis;
+  }
+
+  public static void main(String[] args) {
+    if (args.length < 1) {
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+
+    String format = "csv";
+    String output = null;
+    int jobs = 1;
+    long timeout = 15000;
+    boolean progress = false;
+    String cacheFile = null;
+    SolverOptions options = new SolverOptions();
+    try {
+      for (int i = 1; i < args.length; i++) {
+        switch (args[i]) {
+          case "batch":
+            break;
+          case "--format":
+            format = args[++i];
+            break;
+          case "--output":
+            output = args[++i];
+            break;
+          case "--jobs":
+            jobs = Integer.parseInt(args[++i]);
+            break;
+          case "--threads":
+            options.threads = Integer.parseInt(args[++i]);
+            break;
+          case "--timeout":
+            timeout = Long.parseLong(args[++i]);
+            break;
+          case "--algorithm":
+            options.algorithm = SolverOptions.Algorithm.valueOf(args[++i].toUpperCase());
+            break;
+          case "--heuristic":
+            options.heuristic = SolverOptions.Heuristic.valueOf(args[++i].toUpperCase());
+            break;
+          case "--weight":
+            options.weight = Double.parseDouble(args[++i]);
+            break;
+          case "--prune":
+            List<String> stages = Arrays.asList(args[++i].split(","));
+            options.pruneDeadSquares = stages.contains("dead");
+            options.pruneFrozenBoxes = stages.contains("freeze");
+            options.pruneCorrals = stages.contains("corral");
+            break;
+          case "--macros":
+            List<String> kinds = Arrays.asList(args[++i].split(","));
+            options.tunnelMacros = kinds.contains("tunnel");
+            options.goalRoomMacros = kinds.contains("room");
+            break;
+          case "--external-dir":
+            options.externalDirectory = args[++i];
+            break;
+          case "--optimize":
+            options.optimizeMillis = Long.parseLong(args[++i]);
+            break;
+          case "--cache":
+            cacheFile = args[++i];
+            break;
+          case "--progress":
+            progress = true;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+    } catch (RuntimeException ex) {
+      System.err.println(ex.getMessage() == null ? USAGE : ex.getMessage() + "\n" + USAGE);
+      System.exit(1);
+    }
+
+    SolutionCache cache = cacheFile == null ? null : new SolutionCache(CACHED_LEVELS, cacheFile);
+    long start = System.nanoTime();
+    List<Row> rows = solveAll(levelFiles(new File(args[0])), options, timeout, jobs, progress, cache);
+    double totalSeconds = (System.nanoTime() - start) / 1000000000.0;
+    if (cache != null) cache.close();
+    if (rows.isEmpty()) {
+      System.err.println("No levels found in " + args[0]);
+      System.exit(1);
+    }
+
+    PrintStream out = System.out;
+    try {
+      if (output != null) out = new PrintStream(output);
+    } catch (FileNotFoundException ex) {
+      System.err.println("Cannot write " + output);
+      System.exit(1);
+    }
+    if (format.equals("json")) printJson(out, rows, totalSeconds);
+    else printCsv(out, rows, totalSeconds);
+    out.flush();
+    if (out != System.out) out.close();
+  }
+
+  private static File[] levelFiles(File path) {
+    File[] files = path.isDirectory() ? path.listFiles(File::isFile) : new File[] {path};
+    if (files == null) return new File[0];
+    Arrays.sort(files);
+    return files;
+  }
+
+  // Levels are read only as the jobs get to them, so a collection of any
+  // size never sits in memory, at most two levels per job wait their turn
+  private static List<Row> solveAll(File[] files, SolverOptions options, long timeout, int jobs,
+                                    boolean progress, SolutionCache cache) {
+    int workers = Math.max(1, jobs);
+    ExecutorService executor = Executors.newFixedThreadPool(workers);
+    ArrayDeque<Future<Row>> pending = new ArrayDeque<>();
+    List<Row> rows = new ArrayList<>();
+    try {
+      for (File file : files) {
+        try (LevelReader levels = new LevelReader(file)) {
+          while (levels.hasNext()) {
+            MapData level = levels.next();
+            pending.add(executor.submit(() -> solve(level, options, timeout, progress, cache)));
+            if (pending.size() >= 2 * workers) rows.add(pending.poll().get());
+          }
+        } catch (IOException ex) {
+          System.err.println("Cannot read " + file + ": " + ex.getMessage());
+        }
+      }
+      while (!pending.isEmpty()) rows.add(pending.poll().get());
+    } catch (Exception ex) {
+      throw new IllegalStateException(ex);
+    } finally {
+      executor.shutdownNow();
+    }
+    return rows;
+  }
+
+  private static Row solve(MapData level, SolverOptions options, long timeout, boolean progress,
+                           SolutionCache cache) {
+    char[][] mapData = level.mapLayer();
+    char[][] itemsData = level.itemsLayer();
+
+    Row row = new Row();
+    row.level = level.name;
+    SokoBot sokoBot = new SokoBot(options);
+    if (progress) {
+      ProgressLog log = new ProgressLog(System.err, level.name);
+      sokoBot.setProgressListener(log);
+      sokoBot.setSolutionListener(log);
+    }
+    sokoBot.setSolutionCache(cache);
+    long start = System.nanoTime();
+    row.result = sokoBot.solve(level.columns, level.rows, mapData, itemsData,
+            CancellationToken.withTimeout(timeout));
+    row.millis = (System.nanoTime() - start) / 1000000.0;
+
+    SolutionReplay replay = SolutionReplay.of(level.columns, level.rows, mapData, itemsData, row.result.solution);
+    row.moves = replay.moves;
+    row.pushes = replay.pushes;
+    row.valid = !row.result.solution.isEmpty() && replay.legal && replay.solved;
+    return row;
+  }
+
+  private static void printCsv(PrintStream out, List<Row> rows, double totalSeconds) {
+    out.println("level,status,valid,moves,pushes,bound,nodes_expanded,closed_states,wall_ms");
+    for (Row row : rows) {
+      out.println(String.format(Locale.ROOT, "%s,%s,%b,%d,%d,%.2f,%d,%d,%.2f", csv(row.level), row.result.status,
+              row.valid, row.moves, row.pushes, row.result.statistics.solutionBound, row.result.statistics.nodesExpanded,
+              row.result.statistics.closedStates, row.millis));
+    }
+    double[] latency = latencies(rows);
+    out.println(String.format(Locale.ROOT, "# levels=%d solved=%d total_s=%.3f levels_per_s=%.3f p50_ms=%.2f p95_ms=%.2f p99_ms=%.2f",
+            rows.size(), solved(rows), totalSeconds, rows.size() / totalSeconds,
+            percentile(latency, 50), percentile(latency, 95), percentile(latency, 99)));
+  }
+
+  private static void printJson(PrintStream out, List<Row> rows, double totalSeconds) {
+    out.println("{");
+    out.println("  \"levels\": [");
+    for (int i = 0; i < rows.size(); i++) {
+      Row row = rows.get(i);
+      out.println(String.format(Locale.ROOT, "    {\"level\": %s, \"status\": \"%s\", \"valid\": %b, \"moves\": %d, "
+                      + "\"pushes\": %d, \"bound\": %.2f, \"nodesExpanded\": %d, \"closedStates\": %d, "
+                      + "\"wallMs\": %.2f}%s",
+              json(row.level), row.result.status, row.valid, row.moves, row.pushes, row.result.statistics.solutionBound,
+              row.result.statistics.nodesExpanded, row.result.statistics.closedStates, row.millis, i + 1 < rows.size() ? "," : ""));
+    }
+    out.println("  ],");
+    double[] latency = latencies(rows);
+    out.println(String.format(Locale.ROOT, "  \"summary\": {\"levels\": %d, \"solved\": %d, \"totalSeconds\": %.3f, "
+                    + "\"levelsPerSecond\": %.3f, \"p50Ms\": %.2f, \"p95Ms\": %.2f, \"p99Ms\": %.2f}",
+            rows.size(), solved(rows), totalSeconds, rows.size() / totalSeconds,
+            percentile(latency, 50), percentile(latency, 95), percentile(latency, 99)));
+    out.println("}");
+  }
+
+  private static int solved(List<Row> rows) {
+    int solved = 0;
+    for (Row row : rows) {
+      if (row.result.isSolved()) solved++;
+    }
+    return solved;
+  }
+
+  private static double[] latencies(List<Row> rows) {
+    double[] latency = new double[rows.size()];
+    for (int i = 0; i < latency.length; i++) latency[i] = rows.get(i).millis;
+    Arrays.sort(latency);
+    return latency;
+  }
+
+  // Nearest-rank percentile of sorted values
+  private static double percentile(double[] sorted, int percent) {
+    if (sorted.length == 0) return 0;
+    int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+    return sorted[Math.max(0, rank - 1)];
+  }
+
+  private static String csv(String text) {
+    if (text.indexOf(',') < 0 && text.indexOf('"') < 0) return text;
+    return '"' + text.replace("\"", "\"\"") + '"';
+  }
+
+  static String json(String text) {
+    StringBuilder sb = new StringBuilder("\"");
+    for (char c : text.toCharArray()) {
+      if (c == '"' || c == '\\') sb.append('\\').append(c);
+      else if (c < 0x20) sb.append(String.format("\\u%04x", (int) c));
+      else sb.append(c);
+    }
+    return sb.append('"').toString();
+  }
+}
@@ -3,21 +3,41 @@ package main;
 import gui.GameFrame;
 import reader.FileReader;
 import reader.MapData;
+import solver.SolutionCache;
 
 public class Driver {
+  private static final int CACHED_LEVELS = 256; // solutions --cache keeps in memory
   public static void main(String[] args) {
     if (args.length < 2) {
-      System.err.println("Usage: Driver <map name> <mode>");
+      System.err.println("Usage: Driver <map name or level file> <fp|bot> [--cache <file>]");
+      System.err.println("       Driver <maps directory or level file> batch [options]");
+      System.err.println("       Driver <port> serve [options]");
       System.exit(1);
     }
 
     String mapName = args[0];
     String mode = args[1];
 
+    // Headless, never opens a window
+    if (mode.equals("batch")) {
+      BatchRunner.main(args);
+      return;
+    }
+    if (mode.equals("serve")) {
+      SolverServer.main(args);
+      return;
+    }
+
     FileReader fileReader = new FileReader();
     MapData mapData = fileReader.readFile(mapName);
 
     GameFrame gameFrame = new GameFrame(mapData);
+    if (args.length >= 4 && args[2].equals("--cache")) {
+      // The window exits the JVM when closed, the hook closes the store file first
+      SolutionCache cache = new SolutionCache(CACHED_LEVELS, args[3]);
+      Runtime.getRuntime().addShutdownHook(new Thread(cache::close));
+      gameFrame.setSolutionCache(cache);
+    }
 
     if (mode.equals("fp")) {
       gameFrame.initiateFreePlay();
@@ -0,0 +1,367 @@
+package main;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import reader.LevelReader;
+import reader.MapData;
+import solver.CancellationToken;
+import solver.SearchStatistics;
+import solver.SokoBot;
+import solver.SolutionCache;
+import solver.SolutionReplay;
+import solver.SolveResult;
+import solver.SolverOptions;
+
+// Long-running solver daemon on a loopback HTTP port, so short solves skip
+// JVM startup and run on already compiled code
+// POST /solve takes level text, one level or a whole collection, and answers
+// with one JSON line per level in input order, each written as soon as it is
+// ready. The levels share one deadline counted from when the request arrived,
+// queueing included. Levels wait for a fixed pool of workers, and a request
+// that would take more places than the pool and its queue have left is
+// turned away with 503 at once instead of waiting, one with more levels than
+// the pool and its queue hold at all with 413. With progress=1 the search
+// snapshots come first, and with the ANYTIME algorithm each better solution
+// as it is found. GET /status reports the pool. Try it with
+//   curl --data-binary @maps/original1.txt 'localhost:7878/solve?timeout=5000'
+public class SolverServer {
+  private static final String USAGE = "Usage: Driver <port> serve [options]\n"
+          + "  --workers <n>       levels solved at the same time (default: processors)\n"
+          + "  --queue <n>         levels that may wait for a worker (default 64)\n"
+          + "  --timeout <ms>      deadline per request unless it sets one (default 15000)\n"
+          + "  --max-timeout <ms>  longest deadline a request may ask for (default 60000)\n"
+          + "  --threads <n>       solver threads per level (default 1)\n"
+          + "  --algorithm <name>  ASTAR, IDA_STAR, BIDIRECTIONAL, EXTERNAL or ANYTIME\n"
+          + "  --heuristic <name>  MANHATTAN, PUSH_DISTANCE, MATCHING or PATTERN_DATABASE\n"
+          + "  --cache <file>      reuse solutions stored in the file and add new ones to it\n"
+          + "Requests: POST /solve[?timeout=<ms>&progress=1] with level text, GET /status";
+
+  private static final int MAX_BODY = 4 * 1024 * 1024; // bytes of level text per request
+  private static final int CACHED_LEVELS = 1024;
+  private static final long WRAP_UP_MILLIS = 5000; // past the deadline, for a level to optimize and report
+
+  private final SolverOptions options;
+  private final long timeout;
+  private final long maxTimeout;
+  private final ThreadPoolExecutor workers;
+  private final int capacity;     // workers plus queue
+  private final Semaphore places; // of capacity, taken per level before submitting
+  private final SolutionCache cache;
+
+  private final AtomicInteger running = new AtomicInteger();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong rejected = new AtomicLong();
+  private final AtomicLong solved = new AtomicLong();
+  private final AtomicLong unsolved = new AtomicLong();
+
+  SolverServer(SolverOptions options, int workerCount, int queue, long timeout, long maxTimeout,
+               SolutionCache cache) {
+    this.options = options;
+    this.timeout = timeout;
+    this.maxTimeout = maxTimeout;
+    this.workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
+    this.capacity = workerCount + queue;
+    this.places = new Semaphore(capacity);
+    this.cache = cache;
+  }
+
+  public static void main(String[] args) {
+    int port = 0;
+    int workerCount = Runtime.getRuntime().availableProcessors();
+    int queue = 64;
+    long timeout = 15000;
+    long maxTimeout = 60000;
+    String cacheFile = null;
+    SolverOptions options = new SolverOptions();
+    try {
+      port = Integer.parseInt(args[0]);
+      for (int i = 1; i < args.length; i++) {
+        switch (args[i]) {
+          case "serve":
+            break;
+          case "--workers":
+            workerCount = Integer.parseInt(args[++i]);
+            break;
+          case "--queue":
+            queue = Integer.parseInt(args[++i]);
+            break;
+          case "--timeout":
+            timeout = Long.parseLong(args[++i]);
+            break;
+          case "--max-timeout":
+            maxTimeout = Long.parseLong(args[++i]);
+            break;
+          case "--threads":
+            options.threads = Integer.parseInt(args[++i]);
+            break;
+          case "--algorithm":
+            options.algorithm = SolverOptions.Algorithm.valueOf(args[++i].toUpperCase());
+            break;
+          case "--heuristic":
+            options.heuristic = SolverOptions.Heuristic.valueOf(args[++i].toUpperCase());
+            break;
+          case "--cache":
+            cacheFile = args[++i];
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+    } catch (RuntimeException ex) {
+      System.err.println(ex.getMessage() == null ? USAGE : ex.getMessage() + "\n" + USAGE);
+      System.exit(1);
+    }
+
+    SolutionCache cache = new SolutionCache(CACHED_LEVELS, cacheFile);
+    SolverServer solver = new SolverServer(options, Math.max(1, workerCount), Math.max(0, queue), timeout,
+            maxTimeout, cache);
+    try {
+      HttpServer server = solver.start(port);
+      System.err.println("Solving on http://localhost:" + server.getAddress().getPort() + "/solve");
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        server.stop(0);
+        solver.stop();
+      }));
+    } catch (IOException ex) {
+      System.err.println("Cannot listen on port " + port + ": " + ex.getMessage());
+      System.exit(1);
+    }
+  }
+
+  // Listens on the loopback address only, port 0 picks a free one
+  HttpServer start(int port) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    server.createContext("/solve", this::solve);
+    server.createContext("/status", this::status);
+    // Handlers mostly wait on the workers, so they get threads of their own
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+    return server;
+  }
+
+  // Levels still queued are cancelled, so the handlers waiting on them give up at once
+  void stop() {
+    for (Runnable queued : workers.shutdownNow()) {
+      if (queued instanceof Future) ((Future<?>) queued).cancel(false);
+    }
+    cache.close();
+  }
+
+  private void solve(HttpExchange exchange) throws IOException {
+    Stream stream = null;
+    try {
+      if (!exchange.getRequestMethod().equals("POST")) {
+        reply(exchange, 405, "{\"error\": \"POST level text to /solve\"}");
+        return;
+      }
+      requests.incrementAndGet();
+      String query = exchange.getRequestURI().getRawQuery();
+      long requestTimeout = Math.min(maxTimeout, Long.parseLong(parameter(query, "timeout", Long.toString(timeout))));
+      boolean progress = parameter(query, "progress", "0").equals("1");
+      CancellationToken token = CancellationToken.withTimeout(requestTimeout);
+      long deadline = System.nanoTime() + requestTimeout * 1000000;
+
+      byte[] body = read(exchange.getRequestBody());
+      if (body == null) {
+        reply(exchange, 413, "{\"error\": \"more than " + MAX_BODY + " bytes of level text\"}");
+        return;
+      }
+      List<MapData> levels = new ArrayList<>();
+      try (LevelReader reader = new LevelReader(body, "level")) {
+        while (reader.hasNext()) levels.add(reader.next());
+      }
+      if (levels.isEmpty()) {
+        reply(exchange, 400, "{\"error\": \"no level found\"}");
+        return;
+      }
+      if (levels.size() > capacity) {
+        // Retrying would never help, the pool and its queue are too small for it
+        rejected.incrementAndGet();
+        reply(exchange, 413, "{\"error\": \"" + levels.size() + " levels, at most " + capacity
+                + " fit in one request\"}");
+        return;
+      }
+      if (!places.tryAcquire(levels.size())) {
+        rejected.incrementAndGet();
+        exchange.getResponseHeaders().set("Retry-After", "1");
+        reply(exchange, 503, "{\"error\": \"solver queue is full\"}");
+        return;
+      }
+
+      // Each submitted level gives its place back when it finishes, the
+      // finally gives back the places of levels that never got submitted
+      int unsubmitted = levels.size();
+      try {
+        Stream output = new Stream(exchange, token);
+        stream = output;
+        List<Future<String>> results = new ArrayList<>();
+        long received = System.nanoTime();
+        for (MapData level : levels) {
+          results.add(workers.submit(() -> {
+            try {
+              return solveLevel(level, token, received, progress ? output : null);
+            } finally {
+              places.release();
+            }
+          }));
+          unsubmitted--;
+        }
+        try {
+          for (Future<String> result : results) {
+            long wait = Math.max(0, deadline - System.nanoTime()) / 1000000 + WRAP_UP_MILLIS;
+            stream.write(result.get(wait, TimeUnit.MILLISECONDS));
+          }
+        } catch (Exception ex) {
+          token.cancel(); // the client went away, a level overran or the server is stopping
+        }
+      } finally {
+        if (unsubmitted > 0) {
+          token.cancel(); // the levels already submitted have no one to report to
+          places.release(unsubmitted);
+        }
+      }
+    } catch (RuntimeException ex) {
+      String error = "{\"error\": " + BatchRunner.json(String.valueOf(ex.getMessage())) + "}";
+      // Once the stream has sent its 200 the error can only go in as a line
+      if (stream == null) reply(exchange, 400, error);
+      else stream.write(error);
+    } finally {
+      if (stream != null) stream.close();
+      exchange.close();
+    }
+  }
+
+  private String solveLevel(MapData level, CancellationToken token, long received, Stream progress) {
+    long start = System.nanoTime();
+    char[][] mapData = level.mapLayer();
+    char[][] itemsData = level.itemsLayer();
+    SokoBot sokoBot = new SokoBot(options);
+    sokoBot.setSolutionCache(cache);
+    if (progress != null) {
+      sokoBot.setProgressListener(snapshot -> progress.write(progressLine(level.name, snapshot)));
+      sokoBot.setSolutionListener((solution, bound) -> progress.write(String.format(Locale.ROOT,
+              "{\"level\": %s, \"improved\": {\"solution\": \"%s\", \"moves\": %d, \"bound\": %.2f}}",
+              BatchRunner.json(level.name), solution, solution.length(), bound)));
+    }
+
+    running.incrementAndGet();
+    SolveResult result;
+    try {
+      result = sokoBot.solve(level.columns, level.rows, mapData, itemsData, token);
+    } finally {
+      running.decrementAndGet();
+    }
+    if (result.isSolved()) solved.incrementAndGet();
+    else unsolved.incrementAndGet();
+
+    SolutionReplay replay = SolutionReplay.of(level.columns, level.rows, mapData, itemsData, result.solution);
+    SearchStatistics statistics = result.statistics;
+    return String.format(Locale.ROOT, "{\"level\": %s, \"status\": \"%s\", \"solution\": \"%s\", \"moves\": %d, "
+                    + "\"pushes\": %d, \"bound\": %.2f, \"nodesExpanded\": %d, \"closedStates\": %d, "
+                    + "\"fromCache\": %b, \"queueMs\": %.2f, \"solveMs\": %.2f}",
+            BatchRunner.json(level.name), result.status, result.solution, replay.moves, replay.pushes,
+            statistics.solutionBound, statistics.nodesExpanded, statistics.closedStates, statistics.fromCache,
+            (start - received) / 1000000.0, (System.nanoTime() - start) / 1000000.0);
+  }
+
+  private static String progressLine(String level, SearchStatistics progress) {
+    return String.format(Locale.ROOT, "{\"level\": %s, \"progress\": {\"seconds\": %.1f, \"expanded\": %d, "
+                    + "\"generated\": %d, \"frontier\": %d, \"closed\": %d, \"bestF\": %d}}",
+            BatchRunner.json(level), progress.searchNanos / 1000000000.0, progress.nodesExpanded,
+            progress.nodesGenerated, progress.frontierSize, progress.closedStates, progress.bestF);
+  }
+
+  private void status(HttpExchange exchange) throws IOException {
+    try {
+      reply(exchange, 200, String.format(Locale.ROOT, "{\"workers\": %d, \"running\": %d, \"queued\": %d, "
+                      + "\"freePlaces\": %d, \"requests\": %d, \"rejected\": %d, \"solved\": %d, \"unsolved\": %d, "
+                      + "\"cacheHits\": %d, \"cacheMisses\": %d}",
+              workers.getCorePoolSize(), running.get(), workers.getQueue().size(), places.availablePermits(),
+              requests.get(), rejected.get(), solved.get(), unsolved.get(), cache.hits, cache.misses));
+    } finally {
+      exchange.close();
+    }
+  }
+
+  private static void reply(HttpExchange exchange, int code, String json) throws IOException {
+    byte[] data = (json + "\n").getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(code, data.length);
+    exchange.getResponseBody().write(data);
+  }
+
+  // Whole body, null if it is larger than MAX_BODY
+  private static byte[] read(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[8192];
+    for (int n; (n = in.read(buffer)) >= 0; ) {
+      out.write(buffer, 0, n);
+      if (out.size() > MAX_BODY) return null;
+    }
+    return out.toByteArray();
+  }
+
+  private static String parameter(String query, String name, String fallback) {
+    if (query == null) return fallback;
+    for (String pair : query.split("&")) {
+      int equals = pair.indexOf('=');
+      if (equals > 0 && pair.substring(0, equals).equals(name)) return pair.substring(equals + 1);
+    }
+    return fallback;
+  }
+
+  // Chunked newline-delimited JSON, written by the handler and, for
+  // progress, by the workers, so every line goes out whole
+  // A failed write cancels the request's remaining levels
+  private static final class Stream {
+    private final OutputStream out;
+    private final CancellationToken token;
+    private boolean broken;
+
+    Stream(HttpExchange exchange, CancellationToken token) throws IOException {
+      exchange.getResponseHeaders().set("Content-Type", "application/x-ndjson");
+      exchange.sendResponseHeaders(200, 0);
+      this.out = exchange.getResponseBody();
+      this.token = token;
+    }
+
+    synchronized void write(String line) {
+      if (broken) return;
+      try {
+        out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+      } catch (IOException ex) {
+        broken = true;
+        token.cancel();
+      }
+    }
+
+    synchronized void close() {
+      try {
+        out.close();
+      } catch (IOException ex) {
+        // The client is gone, nothing left to tell it
+      }
+    }
+  }
+}
@@ -1,41 +1,32 @@
 package reader;
 
 import java.io.File;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
 
 public class FileReader {
+  // First level of a level file, given as a path or as a name in maps/
   public MapData readFile(String keyword) {
-    int rows = 0;
-    int columns = 0;
-    char tiles[][] = new char[100][100];
-    for (int i = 0; i < 100; i++) {
-      for (int j = 0; j < 100; j++) {
-        tiles[i][j] = ' ';
-      }
-    }
+    File file = new File(keyword);
+    if (!file.isFile()) file = new File("maps/" + keyword + ".txt");
 
-    try {
-      File file = new File("maps/" + keyword + ".txt");
-      Scanner scanner = new Scanner(file);
-      while (scanner.hasNext()) {
-        String nextLine = scanner.nextLine();
-        columns = Math.max(columns, nextLine.length());
-        for (int i = 0; i < nextLine.length(); i++) {
-          tiles[rows][i] = nextLine.charAt(i);
-        }
-        rows++;
-      }
-      scanner.close();
+    try (LevelReader levels = new LevelReader(file)) {
+      return levels.hasNext() ? levels.next() : null;
     } catch (Exception ex) {
       ex.printStackTrace(System.out);
       return null;
     }
+  }
 
-    MapData result = new MapData();
-    result.tiles = tiles;
-    result.rows = rows;
-    result.columns = columns;
-
-    return result;
+  // Reads every level in a file at once, LevelReader streams them instead
+  public List<MapData> readLevels(File file) {
+    List<MapData> levels = new ArrayList<>();
+    try (LevelReader reader = new LevelReader(file)) {
+      while (reader.hasNext()) levels.add(reader.next());
+    } catch (Exception ex) {
+      ex.printStackTrace(System.out);
+      return null;
+    }
+    return levels;
   }
 }
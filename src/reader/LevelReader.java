@@ -0,0 +1,211 @@
+package reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Streams the levels of a single level file or a .sok/.xsb collection, or of
+// level text already in memory
+// The file is memory-mapped and scanned byte by byte, so only the level being
+// assembled is held in memory, and each MapData is sized to its own rows and
+// columns. Levels are runs of board lines, anything else separates them.
+// Board lines may be run-length encoded ("4#" for "####", "|" splits rows).
+// A level is named by a "Title:" line after its board, else by the first
+// other text line before it, else after the file.
+public class LevelReader implements Iterator<MapData>, Closeable {
+  private final FileChannel channel; // null for text in memory
+  private final ByteBuffer data;
+  private final String base;
+
+  // Board being assembled, rows packed one after another
+  private char[] board = new char[1024];
+  private int[] rowEnd = new int[64];
+  private int rowCount;
+  private final StringBuilder line = new StringBuilder(128);
+  private final StringBuilder expanded = new StringBuilder(128);
+
+  private String preamble;  // first text line since the last board
+  private MapData pending;  // complete, but a Title: line may still follow
+  private boolean pendingTitled;
+  private MapData ready;    // next level handed out
+  private int count;
+
+  public LevelReader(File file) throws IOException {
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    this.data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    this.base = file.getName().replaceFirst("\\.[^.]*$", "");
+  }
+
+  // Levels of text that is already in memory, unnamed ones are named after base
+  public LevelReader(byte[] text, String base) {
+    this.channel = null;
+    this.data = ByteBuffer.wrap(text);
+    this.base = base;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (ready == null) ready = advance();
+    return ready != null;
+  }
+
+  @Override
+  public MapData next() {
+    if (!hasNext()) throw new NoSuchElementException();
+    MapData level = ready;
+    ready = null;
+    return level;
+  }
+
+  // The mapping itself goes away once it is no longer reachable
+  @Override
+  public void close() throws IOException {
+    if (channel != null) channel.close();
+  }
+
+  // Reads lines until a level is complete, null at the end of the file
+  private MapData advance() {
+    while (data.hasRemaining()) {
+      readLine();
+      if (isBoardLine(line)) {
+        // A new board settles the previous level's name
+        MapData finished = rowCount == 0 ? release() : null;
+        addRows();
+        if (finished != null) return finished;
+        continue;
+      }
+      if (rowCount > 0) {
+        pending = toMapData(preamble);
+        pendingTitled = false;
+        preamble = null;
+        rowCount = 0;
+      }
+      readText();
+    }
+    if (rowCount > 0) {
+      pending = toMapData(preamble);
+      pendingTitled = false;
+      preamble = null;
+      rowCount = 0;
+    }
+    return release();
+  }
+
+  private MapData release() {
+    MapData level = pending;
+    pending = null;
+    if (level == null) return null;
+    count++;
+    if (level.name == null) {
+      // Only the last level knows whether the file held a single one
+      boolean last = !data.hasRemaining();
+      level.name = last && count == 1 ? base : base + "#" + count;
+    }
+    return level;
+  }
+
+  private void readLine() {
+    line.setLength(0);
+    while (data.hasRemaining()) {
+      char c = (char) (data.get() & 0xFF);
+      if (c == '\n') break;
+      if (c != '\r') line.append(c);
+    }
+  }
+
+  // Titles, comments and blank lines between boards
+  private void readText() {
+    int start = 0, end = line.length();
+    while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+    while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+    if (start < end && line.charAt(start) == ';') {
+      start++;
+      while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+    }
+    if (start == end) return;
+    String text = line.substring(start, end);
+
+    if (text.regionMatches(true, 0, "Title:", 0, 6)) {
+      String title = text.substring(6).trim();
+      if (pending != null && !pendingTitled) {
+        pending.name = title;
+        pendingTitled = true;
+      } else if (preamble == null) {
+        preamble = title;
+      }
+      return;
+    }
+    // Other "Key: value" fields such as Author: never name a level
+    int colon = text.indexOf(':');
+    if (colon > 0 && text.indexOf(' ') > colon) return;
+    if (preamble == null) preamble = text;
+  }
+
+  private static boolean isBoardLine(CharSequence text) {
+    boolean wall = false;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c == '#') wall = true;
+      else if ("@$.*+ -_|0123456789".indexOf(c) < 0) return false;
+    }
+    return wall;
+  }
+
+  // Expands run lengths and "|" row breaks into plain rows
+  private void addRows() {
+    expanded.setLength(0);
+    int run = 0;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c >= '0' && c <= '9') {
+        run = run * 10 + (c - '0');
+        continue;
+      }
+      if (c == '|') {
+        addRow();
+      } else {
+        char tile = (c == '-' || c == '_') ? ' ' : c;
+        for (int k = Math.max(1, run); k > 0; k--) expanded.append(tile);
+      }
+      run = 0;
+    }
+    addRow();
+  }
+
+  private void addRow() {
+    int start = rowCount == 0 ? 0 : rowEnd[rowCount - 1];
+    int end = start + expanded.length();
+    if (end > board.length) board = Arrays.copyOf(board, Math.max(end, board.length * 2));
+    if (rowCount == rowEnd.length) rowEnd = Arrays.copyOf(rowEnd, rowCount * 2);
+    expanded.getChars(0, expanded.length(), board, start);
+    rowEnd[rowCount++] = end;
+    expanded.setLength(0);
+  }
+
+  private MapData toMapData(String name) {
+    int columns = 0;
+    for (int i = 0; i < rowCount; i++) {
+      columns = Math.max(columns, rowEnd[i] - (i == 0 ? 0 : rowEnd[i - 1]));
+    }
+
+    char[][] tiles = new char[rowCount][columns];
+    for (int i = 0; i < rowCount; i++) {
+      int start = i == 0 ? 0 : rowEnd[i - 1];
+      Arrays.fill(tiles[i], ' ');
+      System.arraycopy(board, start, tiles[i], 0, rowEnd[i] - start);
+    }
+
+    MapData result = new MapData();
+    result.tiles = tiles;
+    result.rows = rowCount;
+    result.columns = columns;
+    result.name = name;
+    return result;
+  }
+}
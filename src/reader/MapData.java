@@ -4,6 +4,31 @@ public class MapData {
   public char[][] tiles;
   public int rows;
   public int columns;
+  public String name;
+
+  // Static layer for the solver: walls '#', goals '.', floor ' '
+  public char[][] mapLayer() {
+    char[][] layer = new char[rows][columns];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < columns; j++) {
+        char tile = tiles[i][j];
+        layer[i][j] = tile == '#' ? '#' : (tile == '.' || tile == '+' || tile == '*') ? '.' : ' ';
+      }
+    }
+    return layer;
+  }
+
+  // Movable layer for the solver: player '@', boxes '$', empty ' '
+  public char[][] itemsLayer() {
+    char[][] layer = new char[rows][columns];
+    for (int i = 0; i < rows; i++) {
+      for (int j = 0; j < columns; j++) {
+        char tile = tiles[i][j];
+        layer[i][j] = (tile == '@' || tile == '+') ? '@' : (tile == '$' || tile == '*') ? '$' : ' ';
+      }
+    }
+    return layer;
+  }
 
   public void print() {
     for (int i = 0; i < rows; i++) {
@@ -0,0 +1,157 @@
+package solver;
+
+// Best-first search from both ends at once over push-level states
+// The forward side pushes from the start layout towards the goals, the
+// backward side pulls from the solved layout, one start per player region,
+// towards the start boxes. Each side keeps its explored states with their
+// path node, and a state accepted by one side that the other side already
+// holds joins the two paths. The side with the smaller frontier expands next.
+// The joined solution is not guaranteed to have the fewest pushes.
+final class BidirectionalSearch {
+  private final Board board;
+  private final CancellationToken token;
+  private final ProgressListener listener;
+  private final long progressInterval;
+  private final long searchStart;
+  private long nextProgress;
+  private SolveResult.Status status;
+
+  private final PushGenerator pushes;
+  private final PullGenerator pulls;
+  private final Side forward;
+  private final Side backward;
+
+  private static final class Side {
+    final Frontier open = new BucketFrontier();
+    final ClosedSet closed;
+    final PathArena arena;
+    final State[] successors;
+    long expanded;
+    long generated;
+    long duplicates;
+    int peakFrontier;
+    int bestF = -1;
+
+    Side(int boxCount, long budget) {
+      this.closed = new ClosedSet(boxCount, budget, true);
+      this.arena = new PathArena(budget);
+      this.successors = new State[boxCount * 4];
+    }
+  }
+
+  // Needs as many goals as boxes, otherwise there is no single solved layout
+  BidirectionalSearch(Board board, SolverOptions options, PushGenerator pushes, short[] startBoxes,
+                      long budgetBytes, CancellationToken token, ProgressListener listener, long searchStart) {
+    this.board = board;
+    this.pushes = pushes;
+    this.token = token;
+    this.listener = listener;
+    this.progressInterval = options.progressInterval * 1000000;
+    this.searchStart = searchStart;
+    this.nextProgress = searchStart + progressInterval;
+
+    HeuristicEvaluator towardsStart = new HeuristicEvaluator(board, options.heuristic,
+            startBoxes, board.pushDistances(startBoxes));
+    this.pulls = new PullGenerator(board, towardsStart, options.weight);
+    long budget = budgetBytes / 4; // closed set and arena on each side
+    this.forward = new Side(startBoxes.length, budget);
+    this.backward = new Side(startBoxes.length, budget);
+  }
+
+  // Pushes from the start to a solved layout, null if the sides never meet
+  int[] search(int player, short[] boxes) {
+    State initial = pushes.initial(player, boxes);
+    if (initial == null) return null;
+    if (board.isSolved(initial.boxes)) return new int[0];
+    forward.closed.add(initial.player, initial.boxes, initial.hash, PathArena.NONE);
+    forward.open.add(initial);
+
+    for (State start : pulls.initial(board.goals)) {
+      backward.closed.add(start.player, start.boxes, start.hash, PathArena.NONE);
+      backward.open.add(start);
+    }
+
+    long expanded = 0;
+    while (!forward.open.isEmpty() && !backward.open.isEmpty()) {
+      if ((++expanded & 255) == 0) {
+        if (token.shouldStop()) {
+          status = token.stopStatus();
+          return null;
+        }
+        if (listener != null) reportProgress();
+      }
+
+      boolean forwards = forward.open.size() <= backward.open.size();
+      Side side = forwards ? forward : backward;
+      Side other = forwards ? backward : forward;
+      if (side.open.size() > side.peakFrontier) side.peakFrontier = side.open.size();
+      State state = side.open.poll();
+      side.expanded++;
+      if (state.f > side.bestF) side.bestF = state.f;
+
+      int count = forwards ? pushes.expand(state, side.successors) : pulls.expand(state, side.successors);
+      side.generated += count;
+      for (int i = 0; i < count; i++) {
+        State newState = side.successors[i];
+        if (side.closed.valueOf(newState.player, newState.boxes, newState.hash) != Integer.MAX_VALUE) {
+          side.duplicates++;
+          continue;
+        }
+        newState.node = side.arena.add(state.node, newState.move);
+        side.closed.add(newState.player, newState.boxes, newState.hash, newState.node);
+
+        int met = other.closed.valueOf(newState.player, newState.boxes, newState.hash);
+        if (met != Integer.MAX_VALUE) {
+          return forwards ? join(newState.node, met) : join(met, newState.node);
+        }
+        side.open.add(newState);
+      }
+    }
+    return null; // One side ran out, the layouts cannot be connected
+  }
+
+  // Why the search stopped early, null if it ran to completion
+  SolveResult.Status getStatus() {
+    return status;
+  }
+
+  void record(SearchStatistics statistics) {
+    statistics.nodesExpanded = forward.expanded + backward.expanded;
+    statistics.nodesGenerated = forward.generated + backward.generated;
+    statistics.duplicatesPruned = forward.duplicates + backward.duplicates;
+    pushes.record(statistics);
+    statistics.deadlocksPruned += pulls.deadlocks;
+    statistics.frontierSize = forward.open.size() + backward.open.size();
+    statistics.peakFrontierSize = forward.peakFrontier + backward.peakFrontier;
+    statistics.bestF = Math.max(forward.bestF, backward.bestF);
+    statistics.closedStates = forward.closed.size() + backward.closed.size();
+    statistics.closedCapacity = forward.closed.capacity() + backward.closed.capacity();
+    statistics.closedBytes = forward.closed.allocatedBytes() + backward.closed.allocatedBytes();
+    statistics.closedLoadFactor = (double) statistics.closedStates / statistics.closedCapacity;
+    statistics.closedBytesPerState = statistics.closedStates == 0 ? 0
+            : (double) statistics.closedBytes / statistics.closedStates;
+    statistics.pathBytes = forward.arena.allocatedBytes() + backward.arena.allocatedBytes();
+  }
+
+  // Forward pushes up to the meeting state, then the pulls that reached it
+  // from the goal undone in reverse order
+  private int[] join(int forwardNode, int backwardNode) {
+    int[] head = PathArena.path(new PathArena[] {forward.arena}, forwardNode);
+    int[] tail = PathArena.path(new PathArena[] {backward.arena}, backwardNode);
+    int[] path = new int[head.length + tail.length];
+    System.arraycopy(head, 0, path, 0, head.length);
+    for (int i = 0; i < tail.length; i++) path[head.length + i] = tail[tail.length - 1 - i];
+    return path;
+  }
+
+  private void reportProgress() {
+    long now = System.nanoTime();
+    if (now < nextProgress) return;
+    nextProgress = now + progressInterval;
+
+    SearchStatistics progress = new SearchStatistics();
+    record(progress);
+    progress.searchNanos = now - searchStart;
+    listener.onProgress(progress);
+  }
+}
@@ -0,0 +1,250 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Static layout of a level, indexed once so the search can work on ints
+// Cells are the floor squares reachable from the player's start, numbered in
+// row-major order so a lower index is always further up/left
+final class Board {
+  static final int LEFT = 0, RIGHT = 1, UP = 2, DOWN = 3;
+  static final int[] dx = {-1, 1, 0, 0}; // left, right, up, down
+  static final int[] dy = {0, 0, -1, 1};
+  static final char[] moves = {'l', 'r', 'u', 'd'};
+
+  final int width;
+  final int height;
+  final int cellCount;
+  final int[] cellAt;   // y * width + x -> cell, -1 for walls and outside
+  final int[] cellX;
+  final int[] cellY;
+  final int[] next;     // cell * 4 + direction -> neighbouring cell, -1 if blocked
+  final boolean[] goal;
+  final short[] goals;
+
+  // Per-level tables, see analyze()
+  static final short UNREACHABLE = Short.MAX_VALUE;
+  final boolean[] dead;            // no goal can ever be reached from here
+  final short[] goalDistance;      // goal index * cellCount + cell -> pushes
+  final int[] nearestGoalPushes;   // fewest pushes to any goal
+  final int[] nearestGoalManhattan;
+
+  // Zobrist keys, one random value per cell for boxes and for the player
+  final long[] boxKeys;
+  final long[] playerKeys;
+
+  Board(int width, int height, char[][] mapData, int startX, int startY) {
+    this.width = width;
+    this.height = height;
+
+    // Flood fill the floor from the player's start
+    boolean[] floor = new boolean[width * height];
+    int[] queue = new int[width * height];
+    int head = 0, tail = 0;
+    floor[startY * width + startX] = true;
+    queue[tail++] = startY * width + startX;
+    while (head < tail) {
+      int square = queue[head++];
+      int x = square % width, y = square / width;
+      for (int i = 0; i < 4; i++) {
+        int nx = x + dx[i], ny = y + dy[i];
+        if (nx < 0 || nx >= width || ny < 0 || ny >= height) continue;
+        int neighbour = ny * width + nx;
+        if (!floor[neighbour] && mapData[ny][nx] != '#') {
+          floor[neighbour] = true;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+
+    // Number the cells
+    cellAt = new int[width * height];
+    int count = 0;
+    for (int square = 0; square < width * height; square++) {
+      cellAt[square] = floor[square] ? count++ : -1;
+    }
+    cellCount = count;
+    cellX = new int[count];
+    cellY = new int[count];
+    goal = new boolean[count];
+    int goalCount = 0;
+    for (int square = 0; square < width * height; square++) {
+      int cell = cellAt[square];
+      if (cell < 0) continue;
+      cellX[cell] = square % width;
+      cellY[cell] = square / width;
+      if (mapData[cellY[cell]][cellX[cell]] == '.') {
+        goal[cell] = true;
+        goalCount++;
+      }
+    }
+    goals = new short[goalCount];
+    for (int cell = 0, g = 0; cell < count; cell++) {
+      if (goal[cell]) goals[g++] = (short) cell;
+    }
+
+    next = new int[count * 4];
+    for (int cell = 0; cell < count; cell++) {
+      for (int i = 0; i < 4; i++) {
+        next[cell * 4 + i] = cellAt(cellX[cell] + dx[i], cellY[cell] + dy[i]);
+      }
+    }
+
+    dead = new boolean[count];
+    goalDistance = new short[goals.length * count];
+    nearestGoalPushes = new int[count];
+    nearestGoalManhattan = new int[count];
+    analyze();
+
+    Random random = new Random(0x50C0B07L);
+    boxKeys = new long[count];
+    playerKeys = new long[count];
+    for (int cell = 0; cell < count; cell++) {
+      boxKeys[cell] = random.nextLong();
+      playerKeys[cell] = random.nextLong();
+    }
+  }
+
+  // Pulls a lone box away from every goal to find how many pushes each cell
+  // needs to reach it, cells no goal can be pulled to are dead squares
+  private void analyze() {
+    int[] queue = new int[cellCount];
+    Arrays.fill(nearestGoalPushes, UNREACHABLE);
+    Arrays.fill(nearestGoalManhattan, Integer.MAX_VALUE);
+
+    for (int g = 0; g < goals.length; g++) {
+      int base = g * cellCount;
+      Arrays.fill(goalDistance, base, base + cellCount, UNREACHABLE);
+      int head = 0, tail = 0;
+      goalDistance[base + goals[g]] = 0;
+      queue[tail++] = goals[g];
+      while (head < tail) {
+        int box = queue[head++];
+        for (int i = 0; i < 4; i++) {
+          // The player stands next to the box and steps back, dragging it along
+          int pulled = next[box * 4 + i];
+          if (pulled < 0 || next[pulled * 4 + i] < 0) continue;
+          if (goalDistance[base + pulled] != UNREACHABLE) continue;
+          goalDistance[base + pulled] = (short) (goalDistance[base + box] + 1);
+          queue[tail++] = pulled;
+        }
+      }
+
+      for (int cell = 0; cell < cellCount; cell++) {
+        nearestGoalPushes[cell] = Math.min(nearestGoalPushes[cell], goalDistance[base + cell]);
+        int manhattan = Math.abs(cellX[cell] - cellX[goals[g]]) + Math.abs(cellY[cell] - cellY[goals[g]]);
+        nearestGoalManhattan[cell] = Math.min(nearestGoalManhattan[cell], manhattan);
+      }
+    }
+
+    for (int cell = 0; cell < cellCount; cell++) {
+      dead[cell] = nearestGoalPushes[cell] == UNREACHABLE;
+    }
+  }
+
+  // Pushes a lone box needs to get from each of the given cells to every
+  // cell, laid out like goalDistance
+  short[] pushDistances(short[] from) {
+    short[] distance = new short[from.length * cellCount];
+    int[] queue = new int[cellCount];
+    Arrays.fill(distance, UNREACHABLE);
+    for (int s = 0; s < from.length; s++) {
+      int base = s * cellCount;
+      int head = 0, tail = 0;
+      distance[base + from[s]] = 0;
+      queue[tail++] = from[s];
+      while (head < tail) {
+        int box = queue[head++];
+        for (int i = 0; i < 4; i++) {
+          // The player needs room behind the box
+          int pushed = next[box * 4 + i];
+          if (pushed < 0 || next[box * 4 + opposite(i)] < 0) continue;
+          if (distance[base + pushed] != UNREACHABLE) continue;
+          distance[base + pushed] = (short) (distance[base + box] + 1);
+          queue[tail++] = pushed;
+        }
+      }
+    }
+    return distance;
+  }
+
+  // Distance from every cell to the closest of the targets, by the table or
+  // ignoring walls
+  int[] nearest(short[] targets, short[] distance, boolean manhattan) {
+    int[] nearest = new int[cellCount];
+    Arrays.fill(nearest, manhattan ? Integer.MAX_VALUE : UNREACHABLE);
+    for (int t = 0; t < targets.length; t++) {
+      for (int cell = 0; cell < cellCount; cell++) {
+        int d = manhattan
+                ? Math.abs(cellX[cell] - cellX[targets[t]]) + Math.abs(cellY[cell] - cellY[targets[t]])
+                : distance[t * cellCount + cell];
+        nearest[cell] = Math.min(nearest[cell], d);
+      }
+    }
+    return nearest;
+  }
+
+  // Cell at the given coordinates, -1 if it is a wall or outside the level
+  int cellAt(int x, int y) {
+    if (x < 0 || x >= width || y < 0 || y >= height) return -1;
+    return cellAt[y * width + x];
+  }
+
+  // Zobrist hash of a box layout, without the player
+  long hashBoxes(short[] boxes) {
+    long hash = 0;
+    for (short box : boxes) hash ^= boxKeys[box];
+    return hash;
+  }
+
+  // Deadlock detection for a box about to be pushed onto cell
+  // Walls, other boxes and dead squares all count as stuck
+  boolean isBoxStuck(int box, short[] boxes) {
+    return box < 0 || dead[box] || indexOf(boxes, box) >= 0;
+  }
+
+  // Whether a box cannot be pushed onto cell at all, a wall or another box
+  boolean isBlocked(int box, short[] boxes) {
+    return box < 0 || indexOf(boxes, box) >= 0;
+  }
+
+  // Returns true if every box sits on a goal
+  boolean isSolved(short[] boxes) {
+    for (short box : boxes) {
+      if (!goal[box]) return false;
+    }
+    return true;
+  }
+
+  static int opposite(int direction) {
+    return direction ^ 1;
+  }
+
+  // Index of a cell in a sorted box array, negative if there is no box there
+  static int indexOf(short[] boxes, int cell) {
+    int low = 0, high = boxes.length - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      if (boxes[mid] < cell) low = mid + 1;
+      else if (boxes[mid] > cell) high = mid - 1;
+      else return mid;
+    }
+    return -1;
+  }
+
+  // Copy of a sorted box array with the box at index moved to cell, kept sorted
+  static short[] moveBox(short[] boxes, int index, int cell) {
+    short[] moved = boxes.clone();
+    int i = index;
+    while (i > 0 && moved[i - 1] > cell) {
+      moved[i] = moved[i - 1];
+      i--;
+    }
+    while (i < moved.length - 1 && moved[i + 1] < cell) {
+      moved[i] = moved[i + 1];
+      i++;
+    }
+    moved[i] = (short) cell;
+    return moved;
+  }
+}
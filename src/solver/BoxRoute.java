@@ -0,0 +1,120 @@
+package solver;
+
+// Fewest pushes taking one box to a target cell while every other box stands
+// still, breadth-first over the box cell and the player's region
+// Used to plan goal-room routes and to replay macro moves, one instance per
+// thread since it keeps its tables between calls
+final class BoxRoute {
+  private final Board board;
+  private final int[] blocked;
+  private final int[] reached;
+  private final int[] scratch;
+  private final int[] fillQueue;
+  private int generation;
+  private int reachedGeneration;
+  private int scratchGeneration;
+
+  // Allocated on the first search, box cell * cellCount + region -> state
+  private int[] seen;
+  private int[] parent;
+  private int[] queue;
+
+  private int[] pushes = new int[16]; // push moves of the last route found
+  private int length;
+
+  BoxRoute(Board board) {
+    this.board = board;
+    this.blocked = new int[board.cellCount];
+    this.reached = new int[board.cellCount];
+    this.scratch = new int[board.cellCount];
+    this.fillQueue = new int[board.cellCount];
+  }
+
+  // Pushes needed to take boxes[index] to target with the player starting
+  // on its cell, -1 if there is no route
+  int find(short[] boxes, int index, int player, int target) {
+    int n = board.cellCount;
+    if (seen == null) {
+      seen = new int[n * n];
+      parent = new int[n * n];
+      queue = new int[n * n];
+    }
+    generation++;
+    for (int i = 0; i < boxes.length; i++) {
+      if (i != index) blocked[boxes[i]] = generation;
+    }
+
+    int box = boxes[index];
+    int start = box * n + fill(scratch, ++scratchGeneration, player, box);
+    int head = 0, tail = 0;
+    seen[start] = generation;
+    parent[start] = -1;
+    queue[tail++] = start;
+    while (head < tail) {
+      int state = queue[head++];
+      box = state / n;
+      if (box == target) return trace(state);
+
+      fill(reached, ++reachedGeneration, state % n, box);
+      for (int i = 0; i < 4; i++) {
+        int behind = board.next[box * 4 + Board.opposite(i)];
+        int to = board.next[box * 4 + i];
+        if (behind < 0 || to < 0 || reached[behind] != reachedGeneration || blocked[to] == generation) continue;
+        // The player ends on the box's old cell
+        int next = to * n + fill(scratch, ++scratchGeneration, box, to);
+        if (seen[next] == generation) continue;
+        seen[next] = generation;
+        parent[next] = state;
+        queue[tail++] = next;
+      }
+    }
+    return -1;
+  }
+
+  // Push moves of the last route found, in order
+  int length() {
+    return length;
+  }
+
+  int push(int i) {
+    return pushes[i];
+  }
+
+  // The player ends each push on the box's old cell, so the pushes follow
+  // from the box cells along the parent chain
+  private int trace(int state) {
+    int n = board.cellCount;
+    length = 0;
+    for (int s = state; parent[s] >= 0; s = parent[s]) length++;
+    if (pushes.length < length) pushes = new int[Math.max(length, pushes.length * 2)];
+    int i = length;
+    for (int s = state; parent[s] >= 0; s = parent[s]) {
+      int from = parent[s] / n, to = s / n;
+      int direction = 0;
+      while (board.next[from * 4 + direction] != to) direction++;
+      pushes[--i] = State.pushMove(from, direction);
+    }
+    return length;
+  }
+
+  // Flood fill around the other boxes and the moving one, returns the top-left cell
+  // Expanding a state keeps its fill in reached while successors use scratch
+  private int fill(int[] stamp, int mark, int start, int box) {
+    int head = 0, tail = 0;
+    int topLeft = start;
+    stamp[start] = mark;
+    fillQueue[tail++] = start;
+    while (head < tail) {
+      int cell = fillQueue[head++];
+      if (cell < topLeft) topLeft = cell;
+      for (int i = 0; i < 4; i++) {
+        int neighbour = board.next[cell * 4 + i];
+        if (neighbour >= 0 && neighbour != box && blocked[neighbour] != generation && stamp[neighbour] != mark) {
+          stamp[neighbour] = mark;
+          fillQueue[tail++] = neighbour;
+        }
+      }
+    }
+    return topLeft;
+  }
+}
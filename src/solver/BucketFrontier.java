@@ -0,0 +1,50 @@
+package solver;
+
+import java.util.Arrays;
+
+// Bucketed priority queue, one stack per integer f value
+// f only takes small integer values, so add is O(1) and poll only scans
+// forward from the lowest non-empty bucket. Within a bucket the newest
+// state comes out first, which favours deeper states on ties.
+final class BucketFrontier implements Frontier {
+  private State[][] buckets = new State[64][];
+  private int[] counts = new int[64];
+  private int lowest = Integer.MAX_VALUE;
+  private int size;
+
+  @Override
+  public void add(State state) {
+    int f = state.f;
+    if (f >= buckets.length) {
+      int length = Math.max(buckets.length * 2, f + 1);
+      buckets = Arrays.copyOf(buckets, length);
+      counts = Arrays.copyOf(counts, length);
+    }
+    State[] bucket = buckets[f];
+    if (bucket == null) {
+      bucket = buckets[f] = new State[16];
+    } else if (counts[f] == bucket.length) {
+      bucket = buckets[f] = Arrays.copyOf(bucket, bucket.length * 2);
+    }
+    bucket[counts[f]++] = state;
+    if (f < lowest) lowest = f;
+    size++;
+  }
+
+  @Override
+  public State poll() {
+    if (size == 0) return null;
+    while (counts[lowest] == 0) lowest++;
+    State[] bucket = buckets[lowest];
+    State state = bucket[--counts[lowest]];
+    bucket[counts[lowest]] = null;
+    size--;
+    if (size == 0) lowest = Integer.MAX_VALUE;
+    return state;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+}
@@ -0,0 +1,51 @@
+package solver;
+
+// Lets a caller stop a running solve, either explicitly or at a deadline
+// The search polls it every few hundred expansions, so stopping takes
+// effect within milliseconds and the search's memory can be reclaimed.
+public class CancellationToken {
+  private final CancellationToken parent;
+  private final long deadline; // System.nanoTime(), Long.MAX_VALUE for none
+  private volatile boolean cancelled;
+
+  public CancellationToken() {
+    this(null, Long.MAX_VALUE);
+  }
+
+  private CancellationToken(CancellationToken parent, long deadline) {
+    this.parent = parent;
+    this.deadline = deadline;
+  }
+
+  // Token that expires the given number of milliseconds from now
+  public static CancellationToken withTimeout(long millis) {
+    return new CancellationToken(null, System.nanoTime() + millis * 1000000L);
+  }
+
+  // Token that can be cancelled on its own but also stops with this one
+  public CancellationToken child() {
+    return new CancellationToken(this, deadline);
+  }
+
+  public void cancel() {
+    cancelled = true;
+  }
+
+  public boolean isCancelled() {
+    return cancelled || (parent != null && parent.isCancelled());
+  }
+
+  public boolean isExpired() {
+    return deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0;
+  }
+
+  // Checked by the searches, also honours thread interruption
+  boolean shouldStop() {
+    return isCancelled() || isExpired() || Thread.currentThread().isInterrupted();
+  }
+
+  // How a stopped search should be reported
+  SolveResult.Status stopStatus() {
+    return isExpired() && !isCancelled() ? SolveResult.Status.TIMED_OUT : SolveResult.Status.CANCELLED;
+  }
+}
@@ -0,0 +1,190 @@
+package solver;
+
+import java.util.Arrays;
+
+// Open-addressing hash set of visited states kept in primitive arrays
+// Each slot holds the Zobrist hash plus the packed layout (player, then the
+// sorted boxes) so lookups never allocate and collisions are still exact
+final class ClosedSet {
+  private static final int INITIAL_CAPACITY = 1 << 12;
+  private static final double GROW_LOAD = 0.75;
+  private static final double MAX_LOAD = 0.9;
+
+  private final int stride;
+  private final int maxCapacity; // slots whose layouts still fit one array
+  private final long budgetBytes;
+  private final boolean trackCosts;
+  private long[] hashes;
+  private short[] layouts;
+  private int[] costs; // best g seen per slot, only when tracking costs
+  private int mask;
+  private int size;
+  private int growAt;
+
+  ClosedSet(int boxCount, long budgetBytes) {
+    this(boxCount, budgetBytes, false);
+  }
+
+  // With trackCosts the table also remembers the cheapest g per state, for
+  // searches that can reach a state by a worse path first
+  ClosedSet(int boxCount, long budgetBytes, boolean trackCosts) {
+    this.stride = boxCount + 1;
+    this.maxCapacity = Math.min(1 << 30, Integer.MAX_VALUE / stride);
+    this.budgetBytes = budgetBytes;
+    this.trackCosts = trackCosts;
+    int capacity = INITIAL_CAPACITY;
+    while (capacity > 2 && bytesFor(capacity) > budgetBytes) capacity >>>= 1;
+    if (bytesFor(capacity) > budgetBytes) throw new MemoryBudgetExceededException();
+    allocate(capacity);
+  }
+
+  // Adds a state, returns false if it was already present
+  // Throws MemoryBudgetExceededException once the table cannot take more states
+  boolean add(int player, short[] boxes, long hash) {
+    long key = hash == 0 ? 1 : hash; // 0 marks an empty slot
+    int slot = find(key, player, boxes);
+    if (hashes[slot] != 0) return false;
+    insert(slot, key, player, boxes, 0);
+    return true;
+  }
+
+  // Adds a state or lowers its recorded cost, returns false if it was
+  // already known at the same or a lower cost
+  boolean addOrImprove(int player, short[] boxes, long hash, int cost) {
+    long key = hash == 0 ? 1 : hash;
+    int slot = find(key, player, boxes);
+    if (hashes[slot] != 0) {
+      if (costs[slot] <= cost) return false;
+      costs[slot] = cost;
+      return true;
+    }
+    insert(slot, key, player, boxes, cost);
+    return true;
+  }
+
+  // Adds a state with any int kept in its cost slot, such as a path node,
+  // returns false if it was already present
+  boolean add(int player, short[] boxes, long hash, int value) {
+    long key = hash == 0 ? 1 : hash;
+    int slot = find(key, player, boxes);
+    if (hashes[slot] != 0) return false;
+    insert(slot, key, player, boxes, value);
+    return true;
+  }
+
+  // Recorded cost of a state, Integer.MAX_VALUE if it is not in the table
+  int costOf(int player, short[] boxes, long hash) {
+    return valueOf(player, boxes, hash);
+  }
+
+  // Int kept with a state, Integer.MAX_VALUE if it is not in the table
+  int valueOf(int player, short[] boxes, long hash) {
+    long key = hash == 0 ? 1 : hash;
+    int slot = find(key, player, boxes);
+    return hashes[slot] == 0 ? Integer.MAX_VALUE : costs[slot];
+  }
+
+  private void insert(int slot, long key, int player, short[] boxes, int cost) {
+    if (size >= growAt) {
+      if (!grow()) throw new MemoryBudgetExceededException();
+      slot = find(key, player, boxes);
+    }
+    hashes[slot] = key;
+    int base = slot * stride;
+    layouts[base] = (short) player;
+    System.arraycopy(boxes, 0, layouts, base + 1, boxes.length);
+    if (trackCosts) costs[slot] = cost;
+    size++;
+  }
+
+  // Empties the table and keeps its arrays for the next use
+  void clear() {
+    Arrays.fill(hashes, 0);
+    size = 0;
+  }
+
+  boolean contains(int player, short[] boxes, long hash) {
+    long key = hash == 0 ? 1 : hash;
+    return hashes[find(key, player, boxes)] != 0;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int capacity() {
+    return hashes.length;
+  }
+
+  double loadFactor() {
+    return (double) size / hashes.length;
+  }
+
+  long allocatedBytes() {
+    return bytesFor(hashes.length);
+  }
+
+  double bytesPerState() {
+    return size == 0 ? 0 : (double) allocatedBytes() / size;
+  }
+
+  // Slot holding the state, or the empty slot where it would go
+  private int find(long key, int player, short[] boxes) {
+    int slot = (int) (key ^ (key >>> 32)) & mask;
+    while (true) {
+      long stored = hashes[slot];
+      if (stored == 0 || (stored == key && sameLayout(slot, player, boxes))) return slot;
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  private boolean sameLayout(int slot, int player, short[] boxes) {
+    int base = slot * stride;
+    if (layouts[base] != player) return false;
+    for (int i = 0; i < boxes.length; i++) {
+      if (layouts[base + 1 + i] != boxes[i]) return false;
+    }
+    return true;
+  }
+
+  // Doubles the table if that fits the budget, otherwise lets it fill up to MAX_LOAD
+  private boolean grow() {
+    int capacity = hashes.length;
+    if (bytesFor(capacity * 2L) > budgetBytes || capacity * 2L > maxCapacity) {
+      if (growAt < (int) (capacity * MAX_LOAD)) {
+        growAt = (int) (capacity * MAX_LOAD);
+        return true;
+      }
+      return false;
+    }
+
+    long[] oldHashes = hashes;
+    short[] oldLayouts = layouts;
+    int[] oldCosts = costs;
+    allocate(capacity * 2);
+    for (int slot = 0; slot < oldHashes.length; slot++) {
+      long key = oldHashes[slot];
+      if (key == 0) continue;
+      int target = (int) (key ^ (key >>> 32)) & mask;
+      while (hashes[target] != 0) target = (target + 1) & mask;
+      hashes[target] = key;
+      System.arraycopy(oldLayouts, slot * stride, layouts, target * stride, stride);
+      if (trackCosts) costs[target] = oldCosts[slot];
+    }
+    return true;
+  }
+
+  private void allocate(int capacity) {
+    long length = (long) capacity * stride;
+    if (length > Integer.MAX_VALUE) throw new MemoryBudgetExceededException();
+    hashes = new long[capacity];
+    layouts = new short[(int) length];
+    if (trackCosts) costs = new int[capacity];
+    mask = capacity - 1;
+    growAt = (int) (capacity * GROW_LOAD);
+  }
+
+  private long bytesFor(long capacity) {
+    return capacity * (8 + 2L * stride + (trackCosts ? 4 : 0));
+  }
+}
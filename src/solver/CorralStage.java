@@ -0,0 +1,164 @@
+package solver;
+
+import java.util.Arrays;
+
+// Corral deadlocks, areas the player is shut out of by boxes
+// After a push, the floor next to the pushed box that the player cannot
+// reach forms a corral. The corral's boxes (every box touching it) are then
+// searched on their own, with all other boxes removed, for a way to either
+// let the player into the corral or put all of them on goals. Taking boxes
+// away only makes pushes easier, so when that small search runs out of states
+// the full layout cannot be solved either. A search that hits its node limit
+// proves nothing and keeps the push. Corrals where the player can already
+// push one of the boxes anywhere but into the corral are left alone, the
+// small search would almost always get out and cost more than it saves.
+final class CorralStage implements PruningStage {
+  private static final int NODE_LIMIT = 256;
+  private static final int MAX_STATES = NODE_LIMIT * 4;
+  private static final int TABLE_MASK = MAX_STATES * 2 - 1;
+
+  private final Board board;
+  private final PlayerReach subReach;
+  private final int[] areaStamp;
+  private final int[] boxStamp;
+  private final int[] queue; // the corral's cells once flooded
+  private int areaSize;
+  private final short[] corralBoxes;
+  private int generation;
+
+  // Sub-search states in generation order, plus a hash table of indices
+  // into them stamped per search so it never needs clearing
+  private final short[][] states = new short[MAX_STATES][];
+  private final int[] statePlayer = new int[MAX_STATES];
+  private final int[] tableIndex = new int[TABLE_MASK + 1];
+  private final int[] tableStamp = new int[TABLE_MASK + 1];
+  private int search;
+
+  CorralStage(Board board) {
+    this.board = board;
+    this.subReach = new PlayerReach(board);
+    this.areaStamp = new int[board.cellCount];
+    this.boxStamp = new int[board.cellCount];
+    this.queue = new int[board.cellCount];
+    this.corralBoxes = new short[board.cellCount];
+  }
+
+  @Override
+  public String name() {
+    return "corrals";
+  }
+
+  @Override
+  public boolean needsReach() {
+    return true;
+  }
+
+  @Override
+  public boolean prunes(short[] boxes, int box, int player, PlayerReach reach) {
+    generation++;
+    for (short other : boxes) boxStamp[other] = generation;
+
+    // Flood the unreachable floor next to the pushed box
+    int head = 0, tail = 0;
+    for (int i = 0; i < 4; i++) {
+      int cell = board.next[box * 4 + i];
+      if (cell >= 0 && boxStamp[cell] != generation && !reach.canReach(cell) && areaStamp[cell] != generation) {
+        areaStamp[cell] = generation;
+        queue[tail++] = cell;
+      }
+    }
+    if (tail == 0) return false;
+    while (head < tail) {
+      int cell = queue[head++];
+      for (int i = 0; i < 4; i++) {
+        int neighbour = board.next[cell * 4 + i];
+        if (neighbour >= 0 && boxStamp[neighbour] != generation && areaStamp[neighbour] != generation) {
+          areaStamp[neighbour] = generation;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+    areaSize = tail;
+
+    // Boxes touching the corral, nothing to prove if they are all on goals
+    int count = 0;
+    boolean offGoal = false;
+    for (short other : boxes) {
+      for (int i = 0; i < 4; i++) {
+        int neighbour = board.next[other * 4 + i];
+        if (neighbour >= 0 && areaStamp[neighbour] == generation) {
+          corralBoxes[count++] = other;
+          if (!board.goal[other]) offGoal = true;
+          break;
+        }
+      }
+    }
+    if (!offGoal) return false;
+
+    // Only boxes that can be pushed nowhere but inwards make a corral worth proving
+    for (int c = 0; c < count; c++) {
+      int corralBox = corralBoxes[c];
+      for (int i = 0; i < 4; i++) {
+        int behind = board.next[corralBox * 4 + Board.opposite(i)];
+        if (behind < 0 || !reach.canReach(behind)) continue;
+        int target = board.next[corralBox * 4 + i];
+        if (!board.isBoxStuck(target, boxes) && areaStamp[target] != generation) return false;
+      }
+    }
+
+    short[] start = new short[count];
+    System.arraycopy(corralBoxes, 0, start, 0, count);
+    return !escapes(start, player);
+  }
+
+  // Breadth-first over pushes of the corral boxes alone, true unless every
+  // state was seen without opening the corral or solving the boxes
+  // The player is kept where the last push left it rather than normalized,
+  // which costs some duplicates but saves a flood fill per successor
+  private boolean escapes(short[] start, int player) {
+    search++;
+    int head = 0, tail = 0;
+    add(player, start, tail++);
+
+    while (head < tail) {
+      if (head == NODE_LIMIT) return true;
+      short[] boxes = states[head];
+      subReach.fill(statePlayer[head++], boxes);
+      for (int a = 0; a < areaSize; a++) {
+        if (subReach.canReach(queue[a])) return true;
+      }
+
+      for (int k = 0; k < boxes.length; k++) {
+        int box = boxes[k];
+        for (int i = 0; i < 4; i++) {
+          int behind = board.next[box * 4 + Board.opposite(i)];
+          if (behind < 0 || !subReach.canReach(behind)) continue;
+          int target = board.next[box * 4 + i];
+          if (board.isBoxStuck(target, boxes)) continue;
+
+          short[] pushed = Board.moveBox(boxes, k, target);
+          if (board.isSolved(pushed)) return true;
+          if (tail == MAX_STATES) return true;
+          if (add(box, pushed, tail)) tail++;
+        }
+      }
+    }
+    return false;
+  }
+
+  // Stores the state at index unless it was seen before, returns whether it was new
+  private boolean add(int player, short[] boxes, int index) {
+    long hash = board.hashBoxes(boxes) ^ board.playerKeys[player];
+    int slot = (int) (hash ^ (hash >>> 32)) & TABLE_MASK;
+    while (tableStamp[slot] == search) {
+      int other = tableIndex[slot];
+      if (statePlayer[other] == player && Arrays.equals(states[other], boxes)) return false;
+      slot = (slot + 1) & TABLE_MASK;
+    }
+    tableStamp[slot] = search;
+    tableIndex[slot] = index;
+    states[index] = boxes;
+    statePlayer[index] = player;
+    return true;
+  }
+}
@@ -0,0 +1,20 @@
+package solver;
+
+// A box on a cell no goal can be pushed to from, see Board.analyze()
+final class DeadSquareStage implements PruningStage {
+  private final Board board;
+
+  DeadSquareStage(Board board) {
+    this.board = board;
+  }
+
+  @Override
+  public String name() {
+    return "dead squares";
+  }
+
+  @Override
+  public boolean prunes(short[] boxes, int box, int player, PlayerReach reach) {
+    return board.dead[box];
+  }
+}
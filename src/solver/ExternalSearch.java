@@ -0,0 +1,516 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// External-memory A* with delayed duplicate detection
+// Open states wait in bucket files by (f, g, h), and the closed set is one
+// sorted file per h, since a layout's h never changes. A bucket is expanded
+// by sorting it in runs that fit the sort buffer, then merging the runs with
+// the closed file of its h: states already closed are dropped, the new closed
+// file is written in the same pass and whatever is left is expanded. Every
+// file is read and written front to back, so only the sort buffer and the
+// bucket write buffers live on the heap.
+// Records are the player and boxes as shorts, the move that made the state
+// and its parent's player and h. That is enough to rebuild the path: each
+// parent is found again by binary search in its closed file.
+final class ExternalSearch {
+  private static final int WRITE_BUFFER = 16 * 1024;
+  private static final int MAX_COST = (1 << 21) - 1;
+
+  private final Board board;
+  private final PushGenerator pushes;
+  private final CancellationToken token;
+  private final ProgressListener listener;
+  private final long progressInterval;
+  private final long searchStart;
+  private final long sortBytes;
+  private final String baseDirectory;
+  private long nextProgress;
+  private SolveResult.Status status;
+
+  private final int keyBytes;    // player and boxes, what duplicates are compared on
+  private final int recordBytes; // key, move, parent player, parent h
+  private final State[] successors;
+  private final byte[] record;
+  private Path directory;
+  private final TreeMap<Long, Bucket> open = new TreeMap<>(); // by f, then deepest g first, then h
+  private final Map<Integer, Long> closedCounts = new TreeMap<>(); // h -> records in its closed file
+  private byte[] sortBuffer;
+
+  private long expanded;
+  private long generated;
+  private long duplicates;
+  private long openRecords;
+  private long peakOpenRecords;
+  private long closedRecords;
+  private long bytesWritten;
+  private int bestF = -1;
+
+  ExternalSearch(Board board, SolverOptions options, PushGenerator pushes, int boxCount, CancellationToken token,
+                 ProgressListener listener, long searchStart) {
+    this.board = board;
+    this.pushes = pushes;
+    this.token = token;
+    this.listener = listener;
+    this.progressInterval = options.progressInterval * 1000000;
+    this.searchStart = searchStart;
+    this.nextProgress = searchStart + progressInterval;
+    this.sortBytes = options.externalSortBytes;
+    this.baseDirectory = options.externalDirectory;
+    this.keyBytes = 2 * (1 + boxCount);
+    this.recordBytes = keyBytes + 8;
+    this.successors = new State[boxCount * 4];
+    this.record = new byte[recordBytes];
+  }
+
+  // Pushes to the goal, null if there is none or the search stopped early
+  int[] search(int player, short[] boxes) {
+    State initial = pushes.initial(player, boxes);
+    if (initial == null) return null;
+    if (board.isSolved(initial.boxes)) return new int[0];
+
+    try {
+      Path base = Paths.get(baseDirectory == null ? System.getProperty("java.io.tmpdir") : baseDirectory);
+      Files.createDirectories(base);
+      directory = Files.createTempDirectory(base, "sokobot-external-");
+      add(initial, PathArena.NONE, 0, 0);
+
+      while (!open.isEmpty()) {
+        Bucket bucket = open.pollFirstEntry().getValue();
+        openRecords -= bucket.records;
+        bestF = bucket.f;
+        int[] path = expand(bucket);
+        if (path != null || status != null) return path;
+      }
+      return null;
+    } catch (IOException ex) {
+      status = SolveResult.Status.IO_ERROR;
+      return null;
+    } finally {
+      deleteDirectory();
+    }
+  }
+
+  // Why the search stopped early, null if it ran to completion
+  SolveResult.Status getStatus() {
+    return status;
+  }
+
+  void record(SearchStatistics statistics) {
+    statistics.nodesExpanded = expanded;
+    statistics.nodesGenerated = generated;
+    statistics.duplicatesPruned = duplicates;
+    pushes.record(statistics);
+    statistics.frontierSize = (int) Math.min(Integer.MAX_VALUE, openRecords);
+    statistics.peakFrontierSize = (int) Math.min(Integer.MAX_VALUE, peakOpenRecords);
+    statistics.bestF = bestF;
+    statistics.closedStates = (int) Math.min(Integer.MAX_VALUE, closedRecords);
+    statistics.closedBytes = closedRecords * recordBytes;
+    statistics.closedBytesPerState = closedRecords == 0 ? 0 : recordBytes;
+    statistics.diskBytesWritten = bytesWritten;
+  }
+
+  // Sorts the bucket, merges it with the closed file of its h and expands
+  // the states that were not closed yet
+  private int[] expand(Bucket bucket) throws IOException {
+    List<Path> runs = new ArrayList<>();
+    List<RecordReader> readers = sortRuns(bucket, runs);
+    Path closed = closedFile(bucket.h);
+    Path merged = directory.resolve("merging");
+
+    try (RecordWriter out = new RecordWriter(merged)) {
+      RecordReader old = Files.exists(closed) ? new RecordReader(closed) : null;
+      if (old != null) readers.add(old);
+
+      long closedCount = 0;
+      while (true) {
+        // Smallest key across the sources, the closed file wins a tie
+        RecordReader first = null;
+        for (RecordReader reader : readers) {
+          if (!reader.hasRecord()) continue;
+          int order = first == null ? -1 : compareKeys(reader.record, first.record);
+          if (order < 0 || (order == 0 && reader == old)) first = reader;
+        }
+        if (first == null) break;
+
+        // Runs hold each key once and so does the closed file
+        System.arraycopy(first.record, 0, record, 0, recordBytes);
+        boolean known = first == old;
+        int copies = 0;
+        for (RecordReader reader : readers) {
+          if (!reader.hasRecord() || compareKeys(reader.record, record) != 0) continue;
+          if (reader != old) copies++;
+          reader.next();
+        }
+        duplicates += known ? copies : copies - 1;
+        out.write(record, 0, recordBytes);
+        closedCount++;
+        if (known) continue;
+
+        int[] path = expandRecord(bucket);
+        if (path != null || status != null) return path;
+      }
+      bytesWritten += out.finish();
+      closedRecords += closedCount - closedCounts.getOrDefault(bucket.h, 0L);
+      closedCounts.put(bucket.h, closedCount);
+    } finally {
+      for (RecordReader reader : readers) reader.close();
+      for (Path run : runs) Files.deleteIfExists(run);
+    }
+    Files.move(merged, closed, StandardCopyOption.REPLACE_EXISTING);
+    return null;
+  }
+
+  private int[] expandRecord(Bucket bucket) throws IOException {
+    State state = decode(record, bucket.g, bucket.h);
+    expanded++;
+    if ((expanded & 255) == 0) {
+      if (token.shouldStop()) {
+        status = token.stopStatus();
+        return null;
+      }
+      if (listener != null) reportProgress();
+    }
+    if (board.isSolved(state.boxes)) return path(record);
+
+    int count = pushes.expand(state, successors);
+    generated += count;
+    for (int i = 0; i < count; i++) {
+      add(successors[i], successors[i].move, state.player, bucket.h);
+      successors[i] = null;
+    }
+    return null;
+  }
+
+  private void add(State state, int move, int parentPlayer, int parentH) throws IOException {
+    long key = (long) state.f << 42 | (long) (MAX_COST - state.cost) << 21 | state.h;
+    Bucket bucket = open.get(key);
+    if (bucket == null) {
+      bucket = new Bucket(state.f, state.cost, state.h);
+      open.put(key, bucket);
+    }
+    ByteBuffer buffer = bucket.buffer;
+    buffer.putShort((short) state.player);
+    for (short box : state.boxes) buffer.putShort(box);
+    buffer.putInt(move);
+    buffer.putShort((short) parentPlayer);
+    buffer.putShort((short) parentH);
+    bucket.records++;
+    if (buffer.remaining() < recordBytes) bucket.flush();
+    openRecords++;
+    peakOpenRecords = Math.max(peakOpenRecords, openRecords);
+  }
+
+  // Cuts the bucket into sorted runs without duplicates, each as large as the
+  // sort buffer allows, and returns a reader for each. A bucket that fits in
+  // one run is sorted in memory, larger ones go through run files, which are
+  // added to runs for the caller to delete.
+  private List<RecordReader> sortRuns(Bucket bucket, List<Path> runs) throws IOException {
+    List<RecordReader> readers = new ArrayList<>();
+    if (!bucket.onDisk) {
+      readers.add(new RecordReader(sorted(bucket.buffer.array(), bucket.buffer.position() / recordBytes)));
+      return readers;
+    }
+
+    bucket.flush();
+    long total = bucket.records * recordBytes;
+    int capacity = (int) Math.max(recordBytes, Math.min(total, sortBytes / recordBytes * recordBytes));
+    if (sortBuffer == null || sortBuffer.length < capacity) sortBuffer = new byte[capacity];
+    try (FileChannel channel = FileChannel.open(bucket.file, StandardOpenOption.READ)) {
+      while (true) {
+        ByteBuffer chunk = ByteBuffer.wrap(sortBuffer, 0, capacity);
+        while (chunk.hasRemaining() && channel.read(chunk) >= 0) {
+          // Read until the buffer is full or the file ends
+        }
+        int count = chunk.position() / recordBytes;
+        if (count == 0) break;
+
+        byte[] run = sorted(sortBuffer, count);
+        boolean last = channel.position() == channel.size();
+        if (runs.isEmpty() && last) {
+          readers.add(new RecordReader(run));
+          break;
+        }
+        Path file = directory.resolve("run-" + runs.size());
+        runs.add(file);
+        try (RecordWriter out = new RecordWriter(file)) {
+          out.write(run, 0, run.length);
+          bytesWritten += out.finish();
+        }
+        readers.add(new RecordReader(file));
+        if (last) break;
+      }
+    }
+    Files.delete(bucket.file);
+    return readers;
+  }
+
+  // The first count records of data in key order, duplicates dropped
+  private byte[] sorted(byte[] data, int count) {
+    int[] order = new int[count];
+    for (int i = 0; i < count; i++) order[i] = i * recordBytes;
+    mergeSort(data, order, new int[count], 0, count);
+
+    byte[] run = new byte[count * recordBytes];
+    int length = 0;
+    for (int i = 0; i < count; i++) {
+      if (i > 0 && compareKeys(data, order[i], data, order[i - 1]) == 0) {
+        duplicates++;
+        continue;
+      }
+      System.arraycopy(data, order[i], run, length, recordBytes);
+      length += recordBytes;
+    }
+    return length == run.length ? run : Arrays.copyOf(run, length);
+  }
+
+  // Stable merge sort of record offsets by key, primitive so a run of
+  // millions of records allocates nothing per record
+  private void mergeSort(byte[] data, int[] order, int[] scratch, int from, int to) {
+    if (to - from < 2) return;
+    int middle = (from + to) >>> 1;
+    mergeSort(data, order, scratch, from, middle);
+    mergeSort(data, order, scratch, middle, to);
+    if (compareKeys(data, order[middle - 1], data, order[middle]) <= 0) return;
+    System.arraycopy(order, from, scratch, from, to - from);
+    for (int i = from, left = from, right = middle; i < to; i++) {
+      if (right >= to || (left < middle && compareKeys(data, scratch[left], data, scratch[right]) <= 0)) {
+        order[i] = scratch[left++];
+      } else {
+        order[i] = scratch[right++];
+      }
+    }
+  }
+
+  private int compareKeys(byte[] a, byte[] b) {
+    return compareKeys(a, 0, b, 0);
+  }
+
+  // Cells are non-negative shorts, so big-endian bytes compare like the values
+  private int compareKeys(byte[] a, int aOffset, byte[] b, int bOffset) {
+    for (int i = 0; i < keyBytes; i++) {
+      int difference = (a[aOffset + i] & 0xFF) - (b[bOffset + i] & 0xFF);
+      if (difference != 0) return difference;
+    }
+    return 0;
+  }
+
+  private State decode(byte[] data, int cost, int h) {
+    ByteBuffer buffer = ByteBuffer.wrap(data);
+    int player = buffer.getShort();
+    short[] boxes = new short[successors.length / 4];
+    for (int i = 0; i < boxes.length; i++) boxes[i] = buffer.getShort();
+    State state = new State(player, boxes, board.hashBoxes(boxes) ^ board.playerKeys[player], cost, buffer.getInt());
+    state.h = h;
+    state.f = cost + h;
+    return state;
+  }
+
+  // Walks back from the goal record, undoing each move and looking the
+  // parent up in the closed file of its h
+  private int[] path(byte[] goal) throws IOException {
+    int[] moves = new int[16];
+    int length = 0;
+    byte[] current = goal.clone();
+    while (true) {
+      ByteBuffer buffer = ByteBuffer.wrap(current);
+      buffer.position(keyBytes);
+      int move = buffer.getInt();
+      if (move == PathArena.NONE) break;
+      int parentPlayer = buffer.getShort();
+      int parentH = buffer.getShort();
+      if (length == moves.length) moves = Arrays.copyOf(moves, length * 2);
+      moves[length++] = move;
+
+      State state = decode(current, 0, 0);
+      int from, to;
+      if (State.isMacro(move)) {
+        from = State.macroBox(move);
+        to = State.macroTarget(move);
+      } else {
+        from = State.pushedBox(move);
+        to = board.next[from * 4 + State.direction(move)];
+      }
+      short[] parentBoxes = Board.moveBox(state.boxes, Board.indexOf(state.boxes, to), from);
+      ByteBuffer key = ByteBuffer.wrap(current);
+      key.putShort((short) parentPlayer);
+      for (short box : parentBoxes) key.putShort(box);
+      if (!find(closedFile(parentH), current)) throw new IOException("Parent state missing from the closed files");
+    }
+
+    int[] path = new int[length];
+    for (int i = 0; i < length; i++) path[i] = moves[length - 1 - i];
+    return path;
+  }
+
+  // Binary search of a sorted closed file for the key at the front of
+  // target, the whole record is read into target when found
+  private boolean find(Path file, byte[] target) throws IOException {
+    if (!Files.exists(file)) return false;
+    byte[] probe = new byte[recordBytes];
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long low = 0, high = channel.size() / recordBytes - 1;
+      while (low <= high) {
+        long middle = (low + high) >>> 1;
+        ByteBuffer buffer = ByteBuffer.wrap(probe);
+        while (buffer.hasRemaining() && channel.read(buffer, middle * recordBytes + buffer.position()) >= 0) {
+          // Positional reads until the record is complete
+        }
+        int order = compareKeys(probe, target);
+        if (order < 0) low = middle + 1;
+        else if (order > 0) high = middle - 1;
+        else {
+          System.arraycopy(probe, 0, target, 0, recordBytes);
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private Path closedFile(int h) {
+    return directory.resolve("closed-" + h);
+  }
+
+  private void reportProgress() {
+    long now = System.nanoTime();
+    if (now < nextProgress) return;
+    nextProgress = now + progressInterval;
+
+    SearchStatistics progress = new SearchStatistics();
+    record(progress);
+    progress.searchNanos = now - searchStart;
+    listener.onProgress(progress);
+  }
+
+  private void deleteDirectory() {
+    if (directory == null) return;
+    try (java.util.stream.Stream<Path> files = Files.list(directory)) {
+      for (Path file : (Iterable<Path>) files::iterator) Files.deleteIfExists(file);
+      Files.deleteIfExists(directory);
+    } catch (IOException ex) {
+      // Leftovers in the temporary directory are harmless
+    }
+  }
+
+  // Open states with one f, g and h, written through a small buffer, the
+  // file only exists once the buffer has filled up
+  private final class Bucket {
+    final int f, g, h;
+    final Path file;
+    final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER / recordBytes * recordBytes);
+    long records;
+    boolean onDisk;
+
+    Bucket(int f, int g, int h) {
+      this.f = f;
+      this.g = g;
+      this.h = h;
+      this.file = directory.resolve("open-" + f + "-" + g + "-" + h);
+    }
+
+    void flush() throws IOException {
+      onDisk = true;
+      buffer.flip();
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+              StandardOpenOption.APPEND)) {
+        while (buffer.hasRemaining()) bytesWritten += channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+
+  private final class RecordWriter implements AutoCloseable {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+    private long bytes;
+
+    RecordWriter(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+              StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    void write(byte[] data, int offset, int length) throws IOException {
+      while (length > 0) {
+        if (!buffer.hasRemaining()) flush();
+        int part = Math.min(length, buffer.remaining());
+        buffer.put(data, offset, part);
+        offset += part;
+        length -= part;
+      }
+    }
+
+    private void flush() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) bytes += channel.write(buffer);
+      buffer.clear();
+    }
+
+    // Writes out what is still buffered, bytes written to the file in all
+    long finish() throws IOException {
+      flush();
+      return bytes;
+    }
+
+    // Without finish the buffered tail is dropped, only a search that ended
+    // halfway through a merge leaves a file that way
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+
+  // Sequential reader holding the current record, over a file or a run
+  // that stayed in memory
+  private final class RecordReader {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    final byte[] record = new byte[recordBytes];
+    private boolean present;
+
+    RecordReader(Path file) throws IOException {
+      this.channel = FileChannel.open(file, StandardOpenOption.READ);
+      this.buffer = ByteBuffer.allocate(64 * 1024 / recordBytes * recordBytes);
+      buffer.limit(0);
+      next();
+    }
+
+    RecordReader(byte[] run) throws IOException {
+      this.channel = null;
+      this.buffer = ByteBuffer.wrap(run);
+      next();
+    }
+
+    boolean hasRecord() {
+      return present;
+    }
+
+    void next() throws IOException {
+      if (buffer.remaining() < recordBytes && channel != null) {
+        buffer.compact();
+        while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+          // Fill the buffer
+        }
+        buffer.flip();
+      }
+      present = buffer.remaining() >= recordBytes;
+      if (present) buffer.get(record);
+    }
+
+    void close() throws IOException {
+      if (channel != null) channel.close();
+    }
+  }
+}
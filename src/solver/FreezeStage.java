@@ -0,0 +1,64 @@
+package solver;
+
+// Freeze deadlocks, boxes that can never move again with one of them off a goal
+// A box is frozen when it is blocked along both axes. Along one axis it is
+// blocked by a wall on either side, dead squares on both sides, or a frozen
+// box on either side. Boxes under test count as walls, which settles
+// groups that hold each other in place, like two boxes along a wall or a
+// 2x2 block. When a box turns out movable, everything concluded while it was
+// counted as a wall is rolled back.
+final class FreezeStage implements PruningStage {
+  private final Board board;
+  private final int[] boxStamp;
+  private final int[] wallStamp;
+  private final int[] marked; // cells counted as walls, in marking order
+  private int markedCount;
+  private int generation;
+  private boolean offGoal;
+
+  FreezeStage(Board board) {
+    this.board = board;
+    this.boxStamp = new int[board.cellCount];
+    this.wallStamp = new int[board.cellCount];
+    this.marked = new int[board.cellCount];
+  }
+
+  @Override
+  public String name() {
+    return "freeze";
+  }
+
+  @Override
+  public boolean prunes(short[] boxes, int box, int player, PlayerReach reach) {
+    generation++;
+    for (short other : boxes) boxStamp[other] = generation;
+    offGoal = false;
+    markedCount = 0;
+    return frozen(box) && offGoal;
+  }
+
+  private boolean frozen(int cell) {
+    int mark = markedCount;
+    boolean wasOffGoal = offGoal;
+    wallStamp[cell] = generation;
+    marked[markedCount++] = cell;
+
+    boolean frozen = blocked(cell, Board.LEFT, Board.RIGHT) && blocked(cell, Board.UP, Board.DOWN);
+    if (frozen) {
+      if (!board.goal[cell]) offGoal = true;
+      return true;
+    }
+    // Movable after all, so nothing found frozen against it holds either
+    while (markedCount > mark) wallStamp[marked[--markedCount]] = 0;
+    offGoal = wasOffGoal;
+    return false;
+  }
+
+  private boolean blocked(int cell, int direction, int opposite) {
+    int first = board.next[cell * 4 + direction];
+    int second = board.next[cell * 4 + opposite];
+    if (first < 0 || second < 0 || wallStamp[first] == generation || wallStamp[second] == generation) return true;
+    if (board.dead[first] && board.dead[second]) return true;
+    return (boxStamp[first] == generation && frozen(first)) || (boxStamp[second] == generation && frozen(second));
+  }
+}
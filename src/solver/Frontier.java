@@ -0,0 +1,15 @@
+package solver;
+
+// Open list of the best-first search, ordered by State.f
+interface Frontier {
+  void add(State state);
+
+  // Removes a state with the lowest f, null if empty
+  State poll();
+
+  int size();
+
+  default boolean isEmpty() {
+    return size() == 0;
+  }
+}
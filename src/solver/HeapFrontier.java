@@ -0,0 +1,23 @@
+package solver;
+
+import java.util.PriorityQueue;
+
+// Binary heap on the cached f value
+final class HeapFrontier implements Frontier {
+  private final PriorityQueue<State> heap = new PriorityQueue<>((a, b) -> Integer.compare(a.f, b.f));
+
+  @Override
+  public void add(State state) {
+    heap.add(state);
+  }
+
+  @Override
+  public State poll() {
+    return heap.poll();
+  }
+
+  @Override
+  public int size() {
+    return heap.size();
+  }
+}
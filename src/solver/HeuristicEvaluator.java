@@ -0,0 +1,92 @@
+package solver;
+
+// Heuristic selected in SolverOptions, one instance per searching thread
+// since the matching keeps scratch state between calls
+final class HeuristicEvaluator {
+  private final MatchingHeuristic matching;
+  private final int[] nearest; // per cell, for the single-box heuristics
+  private final PatternDatabase pairs; // shared between threads, null unless PATTERN_DATABASE
+  private final boolean[] paired;
+
+  // pairs is the level's pattern database, only read for PATTERN_DATABASE
+  HeuristicEvaluator(Board board, SolverOptions.Heuristic type, PatternDatabase pairs) {
+    this.matching = usesMatching(type) ? new MatchingHeuristic(board) : null;
+    this.nearest = type == SolverOptions.Heuristic.MANHATTAN ? board.nearestGoalManhattan : board.nearestGoalPushes;
+    this.pairs = type == SolverOptions.Heuristic.PATTERN_DATABASE ? pairs : null;
+    this.paired = new boolean[board.goals.length];
+  }
+
+  // Heuristic towards other target cells, distance laid out like Board.goalDistance
+  // The pattern database only knows the goals, so it falls back to the matching
+  HeuristicEvaluator(Board board, SolverOptions.Heuristic type, short[] targets, short[] distance) {
+    this.matching = usesMatching(type) ? new MatchingHeuristic(board, targets, distance) : null;
+    this.nearest = board.nearest(targets, distance, type == SolverOptions.Heuristic.MANHATTAN);
+    this.pairs = null;
+    this.paired = null;
+  }
+
+  private static boolean usesMatching(SolverOptions.Heuristic type) {
+    return type == SolverOptions.Heuristic.MATCHING || type == SolverOptions.Heuristic.PATTERN_DATABASE;
+  }
+
+  // Distance from each box to its closest goal, or the cost of the best
+  // box-to-goal assignment
+  // Boxes on goals count zero, deadlocked layouts are Board.UNREACHABLE or more
+  int evaluate(short[] boxes) {
+    if (matching != null) {
+      int h = matching.evaluate(boxes);
+      return pairs == null || h >= Board.UNREACHABLE ? h : Math.max(h, pairBound(boxes, -1, 0));
+    }
+    int total = 0;
+    for (short box : boxes) {
+      total += nearest[box];
+    }
+    return total;
+  }
+
+  // Heuristic of the state's layout after one of its boxes moves, updated
+  // from the state's own value instead of starting over
+  int afterPush(State state, int boxIndex, int from, int to) {
+    if (matching != null) {
+      int h = matching.evaluateMove(state.boxes, boxIndex, to);
+      return pairs == null || h >= Board.UNREACHABLE ? h : Math.max(h, pairBound(state.boxes, boxIndex, to));
+    }
+    return state.h - nearest[from] + nearest[to];
+  }
+
+  // Additive pattern bound: single-box pushes, raised by the pair table for
+  // disjoint pairs picked greedily by how much they add
+  // Any pair that can never be solved makes the whole layout a deadlock
+  // The box at moved is read as sitting on to, -1 for the layout as it is
+  private int pairBound(short[] boxes, int moved, int to) {
+    int count = boxes.length;
+    int bound = 0;
+    for (int i = 0; i < count; i++) {
+      bound += nearest[i == moved ? to : boxes[i]];
+      paired[i] = false;
+    }
+    while (true) {
+      int bestGain = 0, bestI = -1, bestJ = -1;
+      for (int i = 0; i < count; i++) {
+        if (paired[i]) continue;
+        int a = i == moved ? to : boxes[i];
+        for (int j = i + 1; j < count; j++) {
+          if (paired[j]) continue;
+          int b = j == moved ? to : boxes[j];
+          int pushes = pairs.pushes(a, b);
+          if (pushes == PatternDatabase.INFEASIBLE) return Board.UNREACHABLE;
+          int gain = pushes - nearest[a] - nearest[b];
+          if (gain > bestGain) {
+            bestGain = gain;
+            bestI = i;
+            bestJ = j;
+          }
+        }
+      }
+      if (bestI < 0) return bound;
+      bound += bestGain;
+      paired[bestI] = true;
+      paired[bestJ] = true;
+    }
+  }
+}
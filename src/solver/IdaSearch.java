@@ -0,0 +1,171 @@
+package solver;
+
+import java.util.Arrays;
+
+// Iterative-deepening A* over push-level states
+// Each iteration is a depth-first walk that stops at states whose f exceeds
+// the threshold, the next threshold is the smallest f that was cut off. Only
+// the current path and its siblings stay alive, and duplicates are caught by a
+// fixed-size transposition table, so memory stays flat however long it runs.
+final class IdaSearch {
+  private final Board board;
+  private final PushGenerator pushes;
+  private final TranspositionTable table;
+  private final CancellationToken token;
+  private final ProgressListener listener;
+  private final long progressInterval;
+  private final long searchStart;
+  private final int successorCount;
+  private long nextProgress;
+  private SolveResult.Status status;
+
+  // Current path, one frame per depth, the moves are read off it at the goal
+  private State[] path = new State[0];
+  private State[][] children = new State[0][];
+  private int[] childCount = new int[0];
+  private int[] nextChild = new int[0];
+
+  private int iteration;
+  private int threshold;
+  private int nextThreshold;
+  private int maxDepth;
+  private long expanded;
+  private long generated;
+  private long duplicates;
+
+  IdaSearch(Board board, SolverOptions options, PushGenerator pushes, int boxCount, CancellationToken token,
+            ProgressListener listener, long searchStart) {
+    this.board = board;
+    this.pushes = pushes;
+    this.table = new TranspositionTable(options.transpositionBytes);
+    this.token = token;
+    this.listener = listener;
+    this.progressInterval = options.progressInterval * 1000000;
+    this.searchStart = searchStart;
+    this.nextProgress = searchStart + progressInterval;
+    this.successorCount = boxCount * 4;
+  }
+
+  // Pushes to the first goal within the lowest threshold that has one, null
+  // if there is none
+  int[] search(int player, short[] boxes) {
+    State initial = pushes.initial(player, boxes);
+    if (initial == null) return null;
+    if (board.isSolved(initial.boxes)) return new int[0];
+
+    threshold = initial.f;
+    while (true) {
+      iteration++;
+      nextThreshold = Integer.MAX_VALUE;
+      int[] goal = probe(initial);
+      if (goal != null || status != null) return goal;
+      if (nextThreshold == Integer.MAX_VALUE) return null; // Nothing was cut off, every state is seen
+      threshold = nextThreshold;
+    }
+  }
+
+  // Why the search stopped early, null if it ran to completion
+  SolveResult.Status getStatus() {
+    return status;
+  }
+
+  void record(SearchStatistics statistics) {
+    statistics.nodesExpanded = expanded;
+    statistics.nodesGenerated = generated;
+    statistics.duplicatesPruned = duplicates;
+    pushes.record(statistics);
+    statistics.peakFrontierSize = maxDepth;
+    statistics.bestF = threshold;
+    statistics.closedStates = table.size();
+    statistics.closedCapacity = table.capacity();
+    statistics.closedBytes = table.allocatedBytes();
+    statistics.closedLoadFactor = (double) table.size() / table.capacity();
+    statistics.closedBytesPerState = table.size() == 0 ? 0 : (double) table.allocatedBytes() / table.size();
+  }
+
+  // One depth-first iteration, walked with an explicit stack so deep
+  // solutions cannot overflow the thread's stack
+  private int[] probe(State root) {
+    table.visit(root.hash, root.cost, iteration);
+    int depth = 0;
+    expand(root, depth);
+
+    while (depth >= 0) {
+      if (nextChild[depth] == childCount[depth]) {
+        depth--;
+        continue;
+      }
+      State child = children[depth][nextChild[depth]++];
+      if (child.f > threshold) {
+        nextThreshold = Math.min(nextThreshold, child.f);
+        continue;
+      }
+      if (!table.visit(child.hash, child.cost, iteration)) {
+        duplicates++;
+        continue;
+      }
+      if (board.isSolved(child.boxes)) {
+        int[] moves = new int[depth + 1];
+        for (int d = 1; d <= depth; d++) moves[d - 1] = path[d].move;
+        moves[depth] = child.move;
+        return moves;
+      }
+
+      // Cooperative cancellation, same cadence as the best-first searches
+      if ((expanded & 255) == 0) {
+        if (token.shouldStop()) {
+          status = token.stopStatus();
+          return null;
+        }
+        if (listener != null) reportProgress(depth);
+      }
+      expand(child, ++depth);
+    }
+    return null;
+  }
+
+  // Generates the successors of a state into the frame at depth, most
+  // promising first so the last iteration finds the goal early
+  private void expand(State state, int depth) {
+    if (depth == children.length) {
+      int length = Math.max(16, depth * 2);
+      State[][] grown = new State[length][];
+      System.arraycopy(children, 0, grown, 0, depth);
+      for (int i = depth; i < length; i++) grown[i] = new State[successorCount];
+      children = grown;
+      path = Arrays.copyOf(path, length);
+      childCount = Arrays.copyOf(childCount, length);
+      nextChild = Arrays.copyOf(nextChild, length);
+    }
+    maxDepth = Math.max(maxDepth, depth + 1);
+    expanded++;
+
+    path[depth] = state;
+    State[] out = children[depth];
+    int count = pushes.expand(state, out);
+    generated += count;
+    for (int i = 1; i < count; i++) {
+      State moving = out[i];
+      int j = i - 1;
+      while (j >= 0 && (out[j].f > moving.f || (out[j].f == moving.f && out[j].h > moving.h))) {
+        out[j + 1] = out[j];
+        j--;
+      }
+      out[j + 1] = moving;
+    }
+    childCount[depth] = count;
+    nextChild[depth] = 0;
+  }
+
+  private void reportProgress(int depth) {
+    long now = System.nanoTime();
+    if (now < nextProgress) return;
+    nextProgress = now + progressInterval;
+
+    SearchStatistics progress = new SearchStatistics();
+    record(progress);
+    progress.frontierSize = depth + 1;
+    progress.searchNanos = now - searchStart;
+    listener.onProgress(progress);
+  }
+}
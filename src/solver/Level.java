@@ -0,0 +1,71 @@
+package solver;
+
+// The part of a solve that only depends on the level: the indexed floor,
+// dead squares and distance tables, and the pattern database and macro table
+// if the options ask for them
+// Nothing in it is written after the constructor, so any number of solves on
+// any threads can share one without locking, including solves that start
+// from different layouts on the same floor. The per-search tables live in
+// SearchContext.
+public final class Level {
+  public final int width;
+  public final int height;
+  public final long preprocessNanos; // building the tables below
+  final char[][] mapData;            // own copy, the solution cache keys on it
+  final Board board;
+  final PatternDatabase patterns;    // null unless built for the pattern heuristic
+  final MacroTable macros;           // null with both macro kinds off
+  private final boolean tunnelMacros;
+  private final boolean goalRoomMacros;
+
+  // Indexes the floor reachable from the given start square
+  public Level(int width, int height, char[][] mapData, int startX, int startY, SolverOptions options) {
+    long start = System.nanoTime();
+    this.width = width;
+    this.height = height;
+    this.mapData = new char[height][];
+    for (int y = 0; y < height; y++) this.mapData[y] = mapData[y].clone();
+    this.board = new Board(width, height, mapData, startX, startY);
+    this.patterns = options.heuristic == SolverOptions.Heuristic.PATTERN_DATABASE
+            ? PatternDatabase.load(board, options.patternCacheDir, patternBudget(options)) : null;
+    this.tunnelMacros = options.tunnelMacros;
+    this.goalRoomMacros = options.goalRoomMacros;
+    this.macros = tunnelMacros || goalRoomMacros ? new MacroTable(board, tunnelMacros, goalRoomMacros) : null;
+    this.preprocessNanos = System.nanoTime() - start;
+  }
+
+  // Level indexed from the player in itemsData, null if there is none
+  public static Level of(int width, int height, char[][] mapData, char[][] itemsData, SolverOptions options) {
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if (itemsData[y][x] == '@') return new Level(width, height, mapData, x, y, options);
+      }
+    }
+    return null;
+  }
+
+  // Whether the player can stand on the square, every start on the same
+  // floor can share this level
+  public boolean isFloor(int x, int y) {
+    return board.cellAt(x, y) >= 0;
+  }
+
+  // Tables for a solve whose options may differ from the ones this level was
+  // built with, anything missing is built for that solve alone
+  PatternDatabase patternsFor(SolverOptions options) {
+    if (options.heuristic != SolverOptions.Heuristic.PATTERN_DATABASE) return null;
+    return patterns != null ? patterns : PatternDatabase.load(board, options.patternCacheDir, patternBudget(options));
+  }
+
+  // The build's share of the one memory budget, its scratch is gone before
+  // the search starts and only the table stays, see SearchContext.searchBudget
+  private static long patternBudget(SolverOptions options) {
+    return options.memoryBudget / 4;
+  }
+
+  MacroTable macrosFor(SolverOptions options) {
+    if (!options.tunnelMacros && !options.goalRoomMacros) return null;
+    if (options.tunnelMacros == tunnelMacros && options.goalRoomMacros == goalRoomMacros) return macros;
+    return new MacroTable(board, options.tunnelMacros, options.goalRoomMacros);
+  }
+}
@@ -0,0 +1,227 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Macro moves found once per level by static analysis, read-only afterwards
+// so every search thread shares one table
+// Tunnels: a box pushed into a one-wide corridor, with the player following
+// it in, can only be pushed on, so it slides until it leaves the corridor.
+// Goal rooms: an area holding several goals that the rest of the level only
+// reaches through one entrance cell. The goals get a fill order where every
+// goal can still be reached with the earlier ones taken, and a box pushed
+// onto the entrance goes straight to the next goal in that order.
+final class MacroTable {
+  private static final int MAX_ROOM_CELLS = 200; // route planning is quadratic in the room
+
+  private final Board board;
+  private final boolean[] tunnel; // cell * 4 + direction -> a box pushed this way onto the cell slides on
+  private final int[] roomAt;     // cell -> room it belongs to, entrances included, -1 if none
+  private final Room[] rooms;
+
+  private static final class Room {
+    int entrance;
+    short[] order;     // goals in fill order
+    int[] rank;        // cell -> place in order, -1 for room cells that are not goals
+    int[] pushes;      // filled * 4 + direction of entry -> pushes from the entrance, -1 if stuck
+    int[] lastPlayer;  // same index -> cell the player ends on
+  }
+
+  MacroTable(Board board, boolean tunnels, boolean goalRooms) {
+    this.board = board;
+    this.roomAt = new int[board.cellCount];
+    Arrays.fill(roomAt, -1);
+    this.rooms = goalRooms ? findRooms() : new Room[0];
+    this.tunnel = new boolean[board.cellCount * 4];
+    if (tunnels) findTunnels();
+  }
+
+  // Whether a box pushed this way onto the cell keeps sliding, the caller
+  // still checks the next cell for a box
+  boolean slides(int cell, int direction) {
+    return tunnel[cell * 4 + direction];
+  }
+
+  // Room route for a box pushed onto a cell, -1 if the cell is no entrance,
+  // the push does not enter the room or the room is not being filled in
+  // order, otherwise room << 16 | goals filled << 2 | direction
+  int roomEntry(short[] boxes, int moved, int cell, int direction) {
+    int r = roomAt[cell];
+    if (r < 0 || rooms[r].entrance != cell) return -1;
+    Room room = rooms[r];
+    int inside = board.next[cell * 4 + direction];
+    if (inside < 0 || roomAt[inside] != r) return -1;
+
+    // The boxes already inside must be exactly the first goals of the order
+    int filled = 0;
+    for (int i = 0; i < boxes.length; i++) {
+      if (i == moved || roomAt[boxes[i]] != r) continue;
+      filled++;
+    }
+    if (filled == room.order.length) return -1;
+    for (int i = 0; i < boxes.length; i++) {
+      if (i == moved || roomAt[boxes[i]] != r) continue;
+      int rank = room.rank[boxes[i]];
+      if (rank < 0 || rank >= filled) return -1;
+    }
+    if (room.pushes[filled * 4 + direction] < 0) return -1;
+    return r << 16 | filled << 2 | direction;
+  }
+
+  // Goal the box goes to
+  int target(int entry) {
+    return rooms[entry >>> 16].order[(entry & 0xFFFF) >>> 2];
+  }
+
+  // Pushes from the entrance to that goal
+  int pushes(int entry) {
+    return rooms[entry >>> 16].pushes[entry & 0xFFFF];
+  }
+
+  // Cell the player ends on
+  int player(int entry) {
+    return rooms[entry >>> 16].lastPlayer[entry & 0xFFFF];
+  }
+
+  // A box keeps sliding while it and the player are both in a one-wide
+  // corridor, the box is off goal and the next cell is open and alive
+  private void findTunnels() {
+    for (int cell = 0; cell < board.cellCount; cell++) {
+      if (board.goal[cell]) continue;
+      for (int i = 0; i < 4; i++) {
+        int player = board.next[cell * 4 + Board.opposite(i)];
+        int ahead = board.next[cell * 4 + i];
+        if (player < 0 || ahead < 0 || board.dead[ahead]) continue;
+        if (!walled(cell, i) || !walled(player, i)) continue;
+        // Stop on an entrance so the room macro takes over
+        if (roomAt[cell] >= 0 && rooms[roomAt[cell]].entrance == cell) continue;
+        tunnel[cell * 4 + i] = true;
+      }
+    }
+  }
+
+  // Walls on both sides across the direction
+  private boolean walled(int cell, int direction) {
+    int side = direction < 2 ? Board.UP : Board.LEFT;
+    return board.next[cell * 4 + side] < 0 && board.next[cell * 4 + side + 1] < 0;
+  }
+
+  // Every non-goal cell whose removal cuts off an area with two or more goals
+  // is a candidate entrance, the smallest areas win and rooms never overlap
+  private Room[] findRooms() {
+    int n = board.cellCount;
+    List<int[]> candidates = new ArrayList<>(); // entrance, then the area's cells
+    int[] seen = new int[n];
+    int[] queue = new int[n];
+    int mark = 0;
+    for (int entrance = 0; entrance < n; entrance++) {
+      if (board.goal[entrance]) continue;
+      int first = mark + 1;
+      for (int i = 0; i < 4; i++) {
+        // Sides already flooded from this entrance are the same area
+        int start = board.next[entrance * 4 + i];
+        if (start < 0 || seen[start] >= first) continue;
+        mark++;
+        int head = 0, tail = 0, goals = 0;
+        seen[start] = mark;
+        seen[entrance] = mark;
+        queue[tail++] = start;
+        while (head < tail && tail <= MAX_ROOM_CELLS) {
+          int cell = queue[head++];
+          if (board.goal[cell]) goals++;
+          for (int j = 0; j < 4; j++) {
+            int neighbour = board.next[cell * 4 + j];
+            if (neighbour >= 0 && seen[neighbour] != mark) {
+              seen[neighbour] = mark;
+              queue[tail++] = neighbour;
+            }
+          }
+        }
+        // Only areas that are not the rest of the level
+        if (head < tail || tail > n / 2 || goals < 2) continue;
+        int[] candidate = new int[tail + 1];
+        candidate[0] = entrance;
+        System.arraycopy(queue, 0, candidate, 1, tail);
+        candidates.add(candidate);
+      }
+    }
+    candidates.sort((a, b) -> a.length - b.length);
+
+    List<Room> found = new ArrayList<>();
+    BoxRoute route = new BoxRoute(board);
+    for (int[] candidate : candidates) {
+      boolean free = true;
+      for (int cell : candidate) free &= roomAt[cell] < 0;
+      if (!free) continue;
+      Room room = plan(candidate, route);
+      if (room == null) continue;
+      for (int cell : candidate) roomAt[cell] = found.size();
+      found.add(room);
+    }
+    return found.toArray(new Room[0]);
+  }
+
+  // Fill order, built backwards: the last goal is one a box can still be
+  // pushed to from the entrance with every other goal taken, and so on
+  private Room plan(int[] area, BoxRoute route) {
+    int entrance = area[0];
+    boolean[] inRoom = new boolean[board.cellCount];
+    List<Short> open = new ArrayList<>();
+    for (int k = 1; k < area.length; k++) {
+      inRoom[area[k]] = true;
+      if (board.goal[area[k]]) open.add((short) area[k]);
+    }
+
+    short[] order = new short[open.size()];
+    for (int place = order.length - 1; place >= 0; place--) {
+      int chosen = -1;
+      for (int g = 0; g < open.size() && chosen < 0; g++) {
+        List<Short> others = new ArrayList<>(open);
+        others.remove(g);
+        for (int i = 0; i < 4 && chosen < 0; i++) {
+          if (routeIn(inRoom, entrance, others, open.get(g), i, route) >= 0) chosen = g;
+        }
+      }
+      if (chosen < 0) return null;
+      order[place] = open.remove(chosen);
+    }
+
+    Room room = new Room();
+    room.entrance = entrance;
+    room.order = order;
+    room.rank = new int[board.cellCount];
+    Arrays.fill(room.rank, -1);
+    for (int place = 0; place < order.length; place++) room.rank[order[place]] = place;
+    room.pushes = new int[order.length * 4];
+    room.lastPlayer = new int[order.length * 4];
+    List<Short> taken = new ArrayList<>();
+    for (int filled = 0; filled < order.length; filled++) {
+      for (int i = 0; i < 4; i++) {
+        int pushes = routeIn(inRoom, entrance, taken, order[filled], i, route);
+        room.pushes[filled * 4 + i] = pushes;
+        room.lastPlayer[filled * 4 + i] = pushes > 0 ? State.pushedBox(route.push(route.length() - 1)) : -1;
+      }
+      taken.add(order[filled]);
+    }
+    return room;
+  }
+
+  // Pushes from the entrance to the target with the given goals taken, for a
+  // box that came in moving in the direction, -1 if there is no way
+  // Everything outside the room counts as wall, apart from where the player starts
+  private int routeIn(boolean[] inRoom, int entrance, List<Short> taken, int target, int direction,
+                      BoxRoute route) {
+    int player = board.next[entrance * 4 + Board.opposite(direction)];
+    if (player < 0 || inRoom[player]) return -1;
+    short[] blocked = new short[board.cellCount];
+    int count = 0;
+    for (int cell = 0; cell < board.cellCount; cell++) {
+      if (cell == entrance || (!inRoom[cell] && cell != player) || taken.contains((short) cell)) {
+        blocked[count++] = (short) cell;
+      }
+    }
+    blocked = Arrays.copyOf(blocked, count);
+    return route.find(blocked, Board.indexOf(blocked, entrance), player, target);
+  }
+}
@@ -0,0 +1,190 @@
+package solver;
+
+import java.util.Arrays;
+
+// Minimum-cost assignment of boxes to distinct goals over real push distances
+// The goals can also be other target cells with their own distance table,
+// which the backward search uses to price boxes against the start layout
+// Solved with the Hungarian algorithm. The potentials and assignment of the
+// last loaded layout are kept, so a layout that differs by one box is priced
+// by re-augmenting that single row, O(n^2) instead of O(n^3). Spare goals get
+// zero-cost dummy rows so the problem stays square, which the single-row
+// update relies on.
+final class MatchingHeuristic {
+  static final int INFEASIBLE = Board.UNREACHABLE;
+  private static final int NONE = -1;
+
+  private final int cellCount;
+  private final int goalCount;
+  private final short[] goalDistance; // goal index * cellCount + cell -> pushes
+
+  // Loaded layout, rows are boxes (then dummies) and columns are goals
+  private short[] loaded;
+  private boolean feasible;
+  private final int[] rowBox;
+  private final int[] u;
+  private final int[] v;
+  private final int[] goalRow; // column -> row, NONE if free
+  private final int[] rowGoal;
+
+  // Scratch copies for the single-row update
+  private final int[] scratchRowBox;
+  private final int[] scratchU;
+  private final int[] scratchV;
+  private final int[] scratchGoalRow;
+  private final int[] scratchRowGoal;
+  private final int[] minSlack;
+  private final int[] previousGoal;
+  private final boolean[] usedGoal;
+
+  MatchingHeuristic(Board board) {
+    this(board, board.goals, board.goalDistance);
+  }
+
+  MatchingHeuristic(Board board, short[] goals, short[] goalDistance) {
+    this.cellCount = board.cellCount;
+    this.goalCount = goals.length;
+    this.goalDistance = goalDistance;
+    rowBox = new int[goalCount];
+    u = new int[goalCount];
+    v = new int[goalCount];
+    goalRow = new int[goalCount];
+    rowGoal = new int[goalCount];
+    scratchRowBox = new int[goalCount];
+    scratchU = new int[goalCount];
+    scratchV = new int[goalCount];
+    scratchGoalRow = new int[goalCount];
+    scratchRowGoal = new int[goalCount];
+    minSlack = new int[goalCount];
+    previousGoal = new int[goalCount];
+    usedGoal = new boolean[goalCount];
+  }
+
+  // Full assignment for a layout, remembered for later single-box updates
+  int evaluate(short[] boxes) {
+    load(boxes);
+    return feasible ? cost(rowBox, rowGoal) : INFEASIBLE;
+  }
+
+  // Assignment cost after the box in row index of the loaded layout moves to cell
+  // The loaded layout itself is left untouched
+  int evaluateMove(short[] boxes, int index, int cell) {
+    load(boxes);
+    if (boxes.length > goalCount) return INFEASIBLE;
+    System.arraycopy(rowBox, 0, scratchRowBox, 0, rowBox.length);
+    if (!feasible) {
+      // Nothing to start from, price the new layout from scratch
+      scratchRowBox[index] = cell;
+      if (!solve(scratchRowBox, scratchU, scratchV, scratchGoalRow, scratchRowGoal)) return INFEASIBLE;
+      return cost(scratchRowBox, scratchRowGoal);
+    }
+
+    System.arraycopy(u, 0, scratchU, 0, u.length);
+    System.arraycopy(v, 0, scratchV, 0, v.length);
+    System.arraycopy(goalRow, 0, scratchGoalRow, 0, goalCount);
+    System.arraycopy(rowGoal, 0, scratchRowGoal, 0, rowGoal.length);
+
+    scratchRowBox[index] = cell;
+    scratchGoalRow[scratchRowGoal[index]] = NONE;
+    scratchRowGoal[index] = NONE;
+    if (!augment(index, scratchRowBox, scratchU, scratchV, scratchGoalRow, scratchRowGoal)) return INFEASIBLE;
+    return cost(scratchRowBox, scratchRowGoal);
+  }
+
+  private void load(short[] boxes) {
+    if (boxes == loaded) return;
+    loaded = boxes;
+    if (boxes.length > goalCount) {
+      feasible = false;
+      return;
+    }
+    for (int row = 0; row < goalCount; row++) {
+      rowBox[row] = row < boxes.length ? boxes[row] : NONE;
+    }
+    feasible = solve(rowBox, u, v, goalRow, rowGoal);
+  }
+
+  private boolean solve(int[] boxOf, int[] u, int[] v, int[] goalRow, int[] rowGoal) {
+    Arrays.fill(u, 0);
+    Arrays.fill(v, 0);
+    Arrays.fill(goalRow, NONE);
+    Arrays.fill(rowGoal, NONE);
+    for (int row = 0; row < boxOf.length; row++) {
+      if (!augment(row, boxOf, u, v, goalRow, rowGoal)) return false;
+    }
+    return true;
+  }
+
+  private int cost(int[] boxOf, int[] goalOf) {
+    int total = 0;
+    for (int row = 0; row < boxOf.length; row++) {
+      if (goalOf[row] == NONE) return INFEASIBLE;
+      int distance = distance(boxOf[row], goalOf[row]);
+      if (distance >= INFEASIBLE) return INFEASIBLE;
+      total += distance;
+    }
+    return Math.min(total, INFEASIBLE);
+  }
+
+  private int distance(int box, int goal) {
+    if (box == NONE) return 0; // Dummy row for a spare goal
+    return goalDistance[goal * cellCount + box];
+  }
+
+  // Shortest augmenting path from an unassigned row (Dijkstra on reduced costs)
+  // Returns false if there is no goal left to give it
+  private boolean augment(int start, int[] boxOf, int[] u, int[] v, int[] goalRow, int[] rowGoal) {
+    // Make the new row feasible against the current column potentials
+    int best = Integer.MAX_VALUE;
+    for (int goal = 0; goal < goalCount; goal++) {
+      best = Math.min(best, distance(boxOf[start], goal) - v[goal]);
+    }
+    u[start] = best;
+
+    Arrays.fill(minSlack, Integer.MAX_VALUE);
+    Arrays.fill(usedGoal, false);
+    int row = start;
+    int reached = NONE;
+    while (true) {
+      int delta = Integer.MAX_VALUE;
+      int nextGoal = NONE;
+      for (int goal = 0; goal < goalCount; goal++) {
+        if (usedGoal[goal]) continue;
+        int slack = distance(boxOf[row], goal) - u[row] - v[goal];
+        if (slack < minSlack[goal]) {
+          minSlack[goal] = slack;
+          previousGoal[goal] = reached;
+        }
+        if (minSlack[goal] < delta) {
+          delta = minSlack[goal];
+          nextGoal = goal;
+        }
+      }
+      if (nextGoal == NONE) return false;
+
+      // Shift potentials so the cheapest edge becomes tight
+      u[start] += delta;
+      for (int goal = 0; goal < goalCount; goal++) {
+        if (usedGoal[goal]) {
+          u[goalRow[goal]] += delta;
+          v[goal] -= delta;
+        } else {
+          minSlack[goal] -= delta;
+        }
+      }
+      usedGoal[nextGoal] = true;
+      reached = nextGoal;
+      if (goalRow[reached] == NONE) break;
+      row = goalRow[reached];
+    }
+
+    // Flip the assignments back along the path
+    for (int goal = reached; goal != NONE; goal = previousGoal[goal]) {
+      int previous = previousGoal[goal];
+      int owner = previous == NONE ? start : goalRow[previous];
+      goalRow[goal] = owner;
+      rowGoal[owner] = goal;
+    }
+    return true;
+  }
+}
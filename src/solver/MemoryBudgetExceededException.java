@@ -0,0 +1,10 @@
+package solver;
+
+// Thrown when the visited-state table would need more than its byte budget
+public class MemoryBudgetExceededException extends RuntimeException {
+  private static final long serialVersionUID = 1L;
+
+  public MemoryBudgetExceededException() {
+    super("memory budget exceeded");
+  }
+}
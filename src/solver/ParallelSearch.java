@@ -0,0 +1,262 @@
+package solver;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Hash-distributed A* (HDA*) over push-level states
+// Every state has an owner thread picked from its Zobrist hash. Only the
+// owner touches its frontier and closed table, so neither needs locks, and
+// states generated for another owner travel through that owner's lock-free
+// inbox. The first goal found becomes the incumbent; the search then keeps
+// draining every state that could still beat it, so the result stays
+// push-optimal.
+final class ParallelSearch {
+  private final Board board;
+  private final SolverOptions options;
+  private final PatternDatabase patterns;
+  private final MacroTable macros;
+  private final Worker[] workers;
+  private final long workerBudget; // closed set three quarters, arena one
+
+  // States sitting in a frontier or an inbox, the search ends when it hits 0
+  private final AtomicLong work = new AtomicLong();
+  private volatile State incumbent;
+  private volatile int bound = Integer.MAX_VALUE;
+  private volatile boolean stopped;
+  private volatile SolveResult.Status status;
+  private volatile Throwable failure; // first unexpected error of any worker, rethrown by search
+  private final CancellationToken token;
+  private final ProgressListener listener;
+  private final long searchStart;
+  private long nextProgress;
+
+  // budgetBytes is shared out over every worker's closed set and arena
+  ParallelSearch(Board board, SolverOptions options, PatternDatabase patterns, MacroTable macros, long budgetBytes,
+                 CancellationToken token, ProgressListener listener, long searchStart) {
+    this.board = board;
+    this.options = options;
+    this.patterns = patterns;
+    this.macros = macros;
+    this.token = token;
+    this.listener = listener;
+    this.searchStart = searchStart;
+    this.nextProgress = searchStart + options.progressInterval * 1000000;
+    this.workers = new Worker[Math.max(1, options.threads)];
+    this.workerBudget = budgetBytes / workers.length;
+  }
+
+  // Goal state with the fewest pushes, null if there is none
+  State search(int player, short[] boxes) {
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Worker(i, boxes.length);
+    }
+    State initial = workers[0].pushes.initial(player, boxes);
+    if (initial == null) return null;
+
+    work.set(1);
+    workers[ownerOf(initial.hash)].inbox.add(initial);
+
+    Thread[] threads = new Thread[workers.length];
+    for (int i = 0; i < workers.length; i++) {
+      threads[i] = new Thread(workers[i], "hda-worker-" + i);
+      threads[i].start();
+    }
+    try {
+      for (Thread thread : threads) thread.join();
+    } catch (InterruptedException ex) {
+      status = SolveResult.Status.CANCELLED;
+      stopped = true;
+      Thread.currentThread().interrupt();
+    }
+    Throwable failure = this.failure;
+    if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+    if (failure instanceof Error) throw (Error) failure;
+    if (failure != null) throw new IllegalStateException(failure);
+    return incumbent;
+  }
+
+  // Pushes leading to a goal state, only once the workers have finished
+  int[] path(State goal) {
+    PathArena[] arenas = new PathArena[workers.length];
+    for (int i = 0; i < workers.length; i++) arenas[i] = workers[i].arena;
+    return PathArena.path(arenas, goal.node);
+  }
+
+  // Why the search stopped early, null if it ran to completion
+  SolveResult.Status getStatus() {
+    return status;
+  }
+
+  void record(SearchStatistics statistics) {
+    long bytes = 0;
+    int capacity = 0;
+    for (Worker worker : workers) {
+      if (worker == null) continue;
+      statistics.nodesExpanded += worker.expanded;
+      statistics.nodesGenerated += worker.generated;
+      statistics.duplicatesPruned += worker.duplicates;
+      worker.pushes.record(statistics);
+      statistics.frontierSize += worker.open.size();
+      statistics.peakFrontierSize += worker.peakFrontier;
+      statistics.bestF = Math.max(statistics.bestF, worker.bestF);
+      statistics.closedStates += worker.closed.size();
+      capacity += worker.closed.capacity();
+      bytes += worker.closed.allocatedBytes();
+      statistics.pathBytes += worker.arena.allocatedBytes();
+    }
+    statistics.closedCapacity = capacity;
+    statistics.closedBytes = bytes;
+    statistics.closedLoadFactor = capacity == 0 ? 0 : (double) statistics.closedStates / capacity;
+    statistics.closedBytesPerState = statistics.closedStates == 0 ? 0 : (double) bytes / statistics.closedStates;
+  }
+
+  // Worker 0 reports for everyone, the other workers' counters are read
+  // without synchronization so a snapshot is only approximate
+  private void reportProgress() {
+    long now = System.nanoTime();
+    if (now < nextProgress) return;
+    nextProgress = now + options.progressInterval * 1000000;
+
+    SearchStatistics progress = new SearchStatistics();
+    record(progress);
+    progress.searchNanos = now - searchStart;
+    listener.onProgress(progress);
+  }
+
+  private int ownerOf(long hash) {
+    return (int) ((hash >>> 1) % workers.length);
+  }
+
+  private synchronized void fail(Throwable ex) {
+    if (failure == null) failure = ex;
+  }
+
+  private synchronized void offer(State goal) {
+    if (goal.cost < bound) {
+      incumbent = goal;
+      bound = goal.cost;
+    }
+  }
+
+  private class Worker implements Runnable {
+    final int id;
+    final ConcurrentLinkedQueue<State> inbox = new ConcurrentLinkedQueue<>();
+    final PushGenerator pushes;
+    final ClosedSet closed;
+    final PathArena arena; // written by this worker only, node ids name the worker
+    final Frontier open = new BucketFrontier();
+    final State[] successors;
+    long expanded;
+    long generated;
+    long duplicates;
+    int peakFrontier; // summed over workers, so an upper bound on the real peak
+    int bestF = -1;
+
+    Worker(int id, int boxCount) {
+      this.id = id;
+      this.pushes = new PushGenerator(board, new HeuristicEvaluator(board, options.heuristic, patterns),
+              new PruningPipeline(board, options), macros, options.weight);
+      this.closed = new ClosedSet(boxCount, workerBudget / 4 * 3, true);
+      this.arena = new PathArena(id, workers.length, workerBudget / 4);
+      this.successors = new State[boxCount * 4];
+    }
+
+    @Override
+    public void run() {
+      try {
+        loop();
+      } catch (MemoryBudgetExceededException ex) {
+        status = SolveResult.Status.MEMORY_EXCEEDED;
+        stopped = true;
+      } catch (Throwable ex) {
+        // A worker that dies leaves its states counted in work forever, so
+        // the others stop too instead of waiting on it
+        fail(ex);
+        stopped = true;
+      }
+    }
+
+    private void loop() {
+      while (!stopped) {
+        // Take in states other workers generated for us
+        long dropped = 0;
+        State message;
+        while ((message = inbox.poll()) != null) {
+          if (message.cost + message.h >= bound) {
+            dropped++;
+          } else if (closed.addOrImprove(message.player, message.boxes, message.hash, message.cost)) {
+            open.add(message);
+          } else {
+            dropped++;
+            duplicates++;
+          }
+        }
+        if (dropped > 0) work.addAndGet(-dropped);
+
+        State state = open.poll();
+        if (state == null) {
+          if (work.get() == 0) return;
+          LockSupport.parkNanos(50000);
+          continue;
+        }
+
+        // Skip states that cannot beat the incumbent or were reached more cheaply since
+        if (state.cost + state.h >= bound || closed.costOf(state.player, state.boxes, state.hash) < state.cost) {
+          work.decrementAndGet();
+          continue;
+        }
+
+        expanded++;
+        if (state.f > bestF) bestF = state.f;
+        if ((expanded & 255) == 0) {
+          if (token.shouldStop()) {
+            status = token.stopStatus();
+            stopped = true;
+            return;
+          }
+          if (open.size() > peakFrontier) peakFrontier = open.size();
+          if (id == 0 && listener != null) reportProgress();
+        }
+        if (board.isSolved(state.boxes)) {
+          offer(state);
+          work.decrementAndGet();
+          continue;
+        }
+
+        // Count the successors before handing any out, so the total can
+        // never touch zero while this state is still being expanded
+        int count = pushes.expand(state, successors);
+        generated += count;
+        work.addAndGet(count);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+          State newState = successors[i];
+          successors[i] = null;
+          if (board.isSolved(newState.boxes)) {
+            newState.node = arena.add(state.node, newState.move);
+            offer(newState); // Start pruning as early as possible
+          }
+          if (newState.cost + newState.h >= bound) continue;
+
+          // The sender records the path, so the receiver never needs the parent
+          int owner = ownerOf(newState.hash);
+          if (owner == id) {
+            if (closed.addOrImprove(newState.player, newState.boxes, newState.hash, newState.cost)) {
+              newState.node = arena.add(state.node, newState.move);
+              open.add(newState);
+              kept++;
+            } else {
+              duplicates++;
+            }
+          } else {
+            newState.node = arena.add(state.node, newState.move);
+            workers[owner].inbox.add(newState);
+            kept++;
+          }
+        }
+        work.addAndGet(kept - count - 1);
+      }
+    }
+  }
+}
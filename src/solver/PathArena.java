@@ -0,0 +1,69 @@
+package solver;
+
+import java.util.Arrays;
+
+// Compact record of how every accepted state was reached, one parent node
+// and one packed move per state in primitive arrays
+// States only carry their node id, so once expanded their box arrays can be
+// collected while the path back to the start survives here. Node ids interleave
+// several arenas, id = index * stride + arena id, so parallel workers can
+// each append to their own without locks. NONE is the start state.
+final class PathArena {
+  static final int NONE = -1;
+  private static final int BYTES_PER_NODE = 8;
+  private static final int INITIAL_CAPACITY = 1 << 12;
+
+  private final int id;
+  private final int stride;
+  private final long budgetBytes;
+  private int[] parents = new int[INITIAL_CAPACITY];
+  private int[] moves = new int[INITIAL_CAPACITY];
+  private int size;
+
+  PathArena(long budgetBytes) {
+    this(0, 1, budgetBytes);
+  }
+
+  PathArena(int id, int stride, long budgetBytes) {
+    this.id = id;
+    this.stride = stride;
+    this.budgetBytes = budgetBytes;
+  }
+
+  // Records a state reached from parent by move and returns its node id
+  // Throws MemoryBudgetExceededException once the arrays cannot double
+  int add(int parent, int move) {
+    if (size == parents.length) grow();
+    parents[size] = parent;
+    moves[size] = move;
+    return size++ * stride + id;
+  }
+
+  int size() {
+    return size;
+  }
+
+  long allocatedBytes() {
+    return (long) parents.length * BYTES_PER_NODE;
+  }
+
+  // Moves from the start to a node, in order
+  static int[] path(PathArena[] arenas, int node) {
+    int length = 0;
+    for (int n = node; n != NONE; n = arenas[n % arenas.length].parents[n / arenas.length]) length++;
+    int[] path = new int[length];
+    for (int n = node; n != NONE; n = arenas[n % arenas.length].parents[n / arenas.length]) {
+      path[--length] = arenas[n % arenas.length].moves[n / arenas.length];
+    }
+    return path;
+  }
+
+  private void grow() {
+    long capacity = parents.length * 2L;
+    if (capacity * BYTES_PER_NODE > budgetBytes || capacity * stride > Integer.MAX_VALUE) {
+      throw new MemoryBudgetExceededException();
+    }
+    parents = Arrays.copyOf(parents, (int) capacity);
+    moves = Arrays.copyOf(moves, (int) capacity);
+  }
+}
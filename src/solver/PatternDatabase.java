@@ -0,0 +1,272 @@
+package solver;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+// Fewest pushes to put any two boxes on goals, for every pair of cells
+// Built by retrograde analysis: pull two boxes away from every pair of goals,
+// breadth-first over pulls with the player normalized to its region, and
+// keep the cheapest count over all player positions. A pair no pull sequence
+// reaches can never be solved, whatever the other boxes do.
+// The table is one byte per cell pair, saved to a cache file named after a
+// fingerprint of the level's floor and goals so later solves of the same
+// level just map it. Read-only once built, so threads share one instance.
+final class PatternDatabase {
+  static final int INFEASIBLE = 255;
+  private static final int MAX_PUSHES = INFEASIBLE - 1; // longer pairs are capped, still a lower bound
+  private static final int MAX_CELLS = 512;             // the build marks cellCount^3 states
+  private static final int MAGIC = 0x53504442;          // "SPDB"
+  private static final int VERSION = 1;
+  private static final int HEADER = 20;                 // magic, version, fingerprint, cellCount
+
+  private final int cellCount;
+  private final ByteBuffer table; // a * cellCount + b -> pushes, symmetric
+
+  private PatternDatabase(int cellCount, ByteBuffer table) {
+    this.cellCount = cellCount;
+    this.table = table;
+  }
+
+  // Maps the cached table for this level, building and saving it first if
+  // there is none, cacheDir null keeps it in memory only
+  // Null if the level is too large to build a table for or the build needs
+  // more than budgetBytes, the search then makes do with the matching alone
+  static PatternDatabase load(Board board, String cacheDir, long budgetBytes) {
+    if (board.cellCount > MAX_CELLS) return null;
+    try {
+      return load(board, fingerprint(board), cacheDir, budgetBytes);
+    } catch (MemoryBudgetExceededException ex) {
+      return null;
+    }
+  }
+
+  private static PatternDatabase load(Board board, long fingerprint, String cacheDir, long budgetBytes) {
+    if (cacheDir == null) return new PatternDatabase(board.cellCount, ByteBuffer.wrap(build(board, budgetBytes)));
+
+    // The cache only saves time, any problem with it falls back to a fresh build
+    Path file = Paths.get(cacheDir, String.format("%016x.pdb", fingerprint));
+    try {
+      if (!Files.exists(file)) save(file, fingerprint, board.cellCount, build(board, budgetBytes));
+      PatternDatabase mapped = map(file, fingerprint, board.cellCount);
+      if (mapped != null) return mapped;
+      save(file, fingerprint, board.cellCount, build(board, budgetBytes)); // stale or damaged
+      mapped = map(file, fingerprint, board.cellCount);
+      if (mapped != null) return mapped;
+    } catch (IOException ex) {
+      // Read-only or full disk, keep the table in memory instead
+    }
+    return new PatternDatabase(board.cellCount, ByteBuffer.wrap(build(board, budgetBytes)));
+  }
+
+  // Bytes the table keeps for as long as the level lives
+  long tableBytes() {
+    return (long) cellCount * cellCount;
+  }
+
+  // Pushes the two boxes need together, INFEASIBLE if they can never both reach goals
+  int pushes(int a, int b) {
+    return table.get(a * cellCount + b) & 0xFF;
+  }
+
+  // 64-bit FNV-1a over the level size, floor layout and goals, which is all the table depends on
+  static long fingerprint(Board board) {
+    long hash = 0xcbf29ce484222325L;
+    hash = fnv(hash, board.width);
+    hash = fnv(hash, board.height);
+    for (int square = 0; square < board.cellAt.length; square++) {
+      int cell = board.cellAt[square];
+      hash = fnv(hash, cell < 0 ? 0 : board.goal[cell] ? 2 : 1);
+    }
+    return hash;
+  }
+
+  private static long fnv(long hash, int value) {
+    for (int i = 0; i < 4; i++) {
+      hash ^= (value >>> (i * 8)) & 0xFF;
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static PatternDatabase map(Path file, long fingerprint, int cellCount) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = (long) cellCount * cellCount;
+      if (channel.size() != HEADER + size) return null;
+      MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER);
+      header.order(ByteOrder.BIG_ENDIAN);
+      if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+              || header.getLong(8) != fingerprint || header.getInt(16) != cellCount) {
+        return null;
+      }
+      // The mapping stays valid after the channel closes
+      return new PatternDatabase(cellCount, channel.map(FileChannel.MapMode.READ_ONLY, HEADER, size));
+    }
+  }
+
+  // Written to a temporary file and moved into place, so concurrent solves
+  // of the same level never map a half-written table
+  private static void save(Path file, long fingerprint, int cellCount, byte[] table) throws IOException {
+    Files.createDirectories(file.getParent());
+    Path temporary = Files.createTempFile(file.getParent(), "pdb", ".tmp");
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER);
+      header.putInt(MAGIC).putInt(VERSION).putLong(fingerprint).putInt(cellCount).flip();
+      try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+        while (header.hasRemaining()) channel.write(header);
+        ByteBuffer body = ByteBuffer.wrap(table);
+        while (body.hasRemaining()) channel.write(body);
+      }
+      Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+  }
+
+  // Breadth-first over pulls from every pair of goals, a state is the two
+  // box cells plus the top-left cell of the player's region
+  // The table, the visited bits and the queue are charged against
+  // budgetBytes, MemoryBudgetExceededException once they would not fit
+  static byte[] build(Board board, long budgetBytes) {
+    int n = board.cellCount;
+    long fixedBytes = (long) n * n + (((long) n * n * n + 63) >>> 6) * 8;
+    if (fixedBytes > budgetBytes) throw new MemoryBudgetExceededException();
+    byte[] table = new byte[n * n];
+    Arrays.fill(table, (byte) INFEASIBLE);
+    long[] seen = new long[(int) (((long) n * n * n + 63) >>> 6)];
+    Reach reach = new Reach(board);
+
+    int[] queue = new int[1024];
+    int tail = 0;
+    for (int i = 0; i < board.goals.length; i++) {
+      for (int j = i + 1; j < board.goals.length; j++) {
+        int a = board.goals[i], b = board.goals[j];
+        // Every region the player could be left in around the two goals
+        for (int cell = 0; cell < n; cell++) {
+          if (cell == a || cell == b) continue;
+          int region = reach.fill(cell, a, b);
+          if (region != cell) continue; // only start from each region's top-left cell
+          if (mark(seen, n, a, b, region)) {
+            if (tail == queue.length) queue = grow(queue, fixedBytes, budgetBytes);
+            queue[tail++] = encode(n, a, b, region);
+          }
+        }
+      }
+    }
+
+    int head = 0;
+    int depth = 0;
+    while (head < tail) {
+      int layerEnd = tail;
+      for (; head < layerEnd; head++) {
+        int state = queue[head];
+        int player = state % n;
+        int b = (state / n) % n;
+        int a = state / n / n;
+        if ((table[a * n + b] & 0xFF) == INFEASIBLE) {
+          int pushes = Math.min(depth, MAX_PUSHES);
+          table[a * n + b] = (byte) pushes;
+          table[b * n + a] = (byte) pushes;
+        }
+
+        // The player pulls a box by stepping away from it
+        reach.fill(player, a, b);
+        for (int k = 0; k < 2; k++) {
+          int box = k == 0 ? a : b, other = k == 0 ? b : a;
+          for (int dir = 0; dir < 4; dir++) {
+            int from = board.next[box * 4 + dir];
+            if (from < 0 || !reach.canReach(from)) continue;
+            int to = board.next[from * 4 + dir];
+            if (to < 0 || to == other) continue;
+            int newA = Math.min(from, other), newB = Math.max(from, other);
+            int region = reach.normalize(to, newA, newB);
+            if (mark(seen, n, newA, newB, region)) {
+              if (tail == queue.length) queue = grow(queue, fixedBytes, budgetBytes);
+              queue[tail++] = encode(n, newA, newB, region);
+            }
+          }
+        }
+      }
+      depth++;
+    }
+    return table;
+  }
+
+  // Twice the queue, counting the old and the new array while both are alive
+  private static int[] grow(int[] queue, long fixedBytes, long budgetBytes) {
+    if (fixedBytes + queue.length * 12L > budgetBytes) throw new MemoryBudgetExceededException();
+    return Arrays.copyOf(queue, queue.length * 2);
+  }
+
+  private static int encode(int n, int a, int b, int player) {
+    return (a * n + b) * n + player;
+  }
+
+  // Sets the state's bit, false if it was already set
+  private static boolean mark(long[] seen, int n, int a, int b, int player) {
+    long index = ((long) a * n + b) * n + player;
+    long bit = 1L << (index & 63);
+    int word = (int) (index >>> 6);
+    if ((seen[word] & bit) != 0) return false;
+    seen[word] |= bit;
+    return true;
+  }
+
+  // Player flood fill around exactly two boxes, with a second stamp set so
+  // normalizing a successor keeps the fill it was generated from
+  private static final class Reach {
+    private final Board board;
+    private final int[] reached;
+    private final int[] scratch;
+    private final int[] queue;
+    private int generation;
+    private int scratchGeneration;
+
+    Reach(Board board) {
+      this.board = board;
+      this.reached = new int[board.cellCount];
+      this.scratch = new int[board.cellCount];
+      this.queue = new int[board.cellCount];
+    }
+
+    int fill(int start, int a, int b) {
+      return flood(reached, ++generation, start, a, b);
+    }
+
+    boolean canReach(int cell) {
+      return reached[cell] == generation;
+    }
+
+    // Top-left cell of the region, without disturbing the last fill
+    int normalize(int start, int a, int b) {
+      return flood(scratch, ++scratchGeneration, start, a, b);
+    }
+
+    private int flood(int[] stamp, int mark, int start, int a, int b) {
+      int head = 0, tail = 0;
+      int topLeft = start;
+      stamp[start] = mark;
+      queue[tail++] = start;
+      while (head < tail) {
+        int cell = queue[head++];
+        if (cell < topLeft) topLeft = cell;
+        for (int i = 0; i < 4; i++) {
+          int neighbour = board.next[cell * 4 + i];
+          if (neighbour >= 0 && neighbour != a && neighbour != b && stamp[neighbour] != mark) {
+            stamp[neighbour] = mark;
+            queue[tail++] = neighbour;
+          }
+        }
+      }
+      return topLeft;
+    }
+  }
+}
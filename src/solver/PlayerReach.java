@@ -0,0 +1,92 @@
+package solver;
+
+// Flood fill of the squares the player can walk to without pushing
+// Uses generation stamps so repeated fills never clear or allocate arrays,
+// one instance per searching thread
+final class PlayerReach {
+  private final Board board;
+  private final int[] reached;
+  private final int[] blocked;
+  private final int[] queue;
+  private final int[] cameFrom;
+  private int generation;
+  private int topLeft;
+
+  PlayerReach(Board board) {
+    this.board = board;
+    this.reached = new int[board.cellCount];
+    this.blocked = new int[board.cellCount];
+    this.queue = new int[board.cellCount];
+    this.cameFrom = new int[board.cellCount];
+  }
+
+  // Marks every square reachable from start and returns the top-left one,
+  // which is used as the canonical player position of the region
+  int fill(int start, short[] boxes) {
+    block(boxes);
+    int head = 0, tail = 0;
+    int topLeft = start;
+    reached[start] = generation;
+    queue[tail++] = start;
+    while (head < tail) {
+      int cell = queue[head++];
+      if (cell < topLeft) topLeft = cell;
+      for (int i = 0; i < 4; i++) {
+        int neighbour = board.next[cell * 4 + i];
+        if (neighbour >= 0 && reached[neighbour] != generation && blocked[neighbour] != generation) {
+          reached[neighbour] = generation;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+    this.topLeft = topLeft;
+    return topLeft;
+  }
+
+  // Top-left square of the last fill
+  int topLeft() {
+    return topLeft;
+  }
+
+  // Whether the last fill reached the cell
+  boolean canReach(int cell) {
+    return reached[cell] == generation;
+  }
+
+  // Appends the shortest walk from one square to another, false if there is none
+  boolean walk(int from, int to, short[] boxes, StringBuilder out) {
+    block(boxes);
+    int head = 0, tail = 0;
+    reached[from] = generation;
+    queue[tail++] = from;
+    while (head < tail && reached[to] != generation) {
+      int cell = queue[head++];
+      for (int i = 0; i < 4; i++) {
+        int neighbour = board.next[cell * 4 + i];
+        if (neighbour >= 0 && reached[neighbour] != generation && blocked[neighbour] != generation) {
+          reached[neighbour] = generation;
+          cameFrom[neighbour] = i;
+          queue[tail++] = neighbour;
+        }
+      }
+    }
+    if (reached[to] != generation) return false;
+
+    // Walk back from the target, then write the directions in order
+    int length = out.length();
+    for (int cell = to; cell != from; cell = board.next[cell * 4 + Board.opposite(cameFrom[cell])]) {
+      out.append(Board.moves[cameFrom[cell]]);
+    }
+    for (int i = length, j = out.length() - 1; i < j; i++, j--) {
+      char c = out.charAt(i);
+      out.setCharAt(i, out.charAt(j));
+      out.setCharAt(j, c);
+    }
+    return true;
+  }
+
+  private void block(short[] boxes) {
+    generation++;
+    for (short box : boxes) blocked[box] = generation;
+  }
+}
@@ -0,0 +1,8 @@
+package solver;
+
+// Receives snapshots of a running search, at most once per
+// SolverOptions.progressInterval and always on the searching thread
+// Implementations should return quickly, the search waits for them
+public interface ProgressListener {
+  void onProgress(SearchStatistics progress);
+}
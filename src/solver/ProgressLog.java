@@ -0,0 +1,28 @@
+package solver;
+
+import java.io.PrintStream;
+
+// Progress sink that writes one line per snapshot and per better solution
+public class ProgressLog implements ProgressListener, SolutionListener {
+  private final PrintStream out;
+  private final String label;
+
+  public ProgressLog(PrintStream out, String label) {
+    this.out = out;
+    this.label = label;
+  }
+
+  @Override
+  public void onProgress(SearchStatistics progress) {
+    out.println(String.format("[%s] %.1fs expanded=%d (%.0f/s) generated=%d duplicates=%d deadlocks=%d"
+                    + " frontier=%d closed=%d f=%d",
+            label, progress.searchNanos / 1000000000.0, progress.nodesExpanded, progress.nodesPerSecond(),
+            progress.nodesGenerated, progress.duplicatesPruned, progress.deadlocksPruned,
+            progress.frontierSize, progress.closedStates, progress.bestF));
+  }
+
+  @Override
+  public void onSolution(String solution, double bound) {
+    out.println(String.format("[%s] solution of %d moves, bound %.2f", label, solution.length(), bound));
+  }
+}
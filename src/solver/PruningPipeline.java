@@ -0,0 +1,80 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Deadlock tests run in order on every generated push, cheapest first, until
+// one of them prunes it. Stages are switched on and off in SolverOptions.
+// Each stage counts its calls and prunes; timing every call would cost more
+// than the cheap stages themselves, so only one call in 64 is timed and the
+// total is scaled up from that sample.
+final class PruningPipeline {
+  private static final int SAMPLE_MASK = 63;
+
+  private final PruningStage[] stages;
+  private final long[] calls;
+  private final long[] pruned;
+  private final long[] sampledCalls;
+  private final long[] sampledNanos;
+  private boolean reachFilled;
+
+  PruningPipeline(Board board, SolverOptions options) {
+    List<PruningStage> stages = new ArrayList<>();
+    if (options.pruneDeadSquares) stages.add(new DeadSquareStage(board));
+    if (options.pruneFrozenBoxes) stages.add(new FreezeStage(board));
+    if (options.pruneCorrals) stages.add(new CorralStage(board));
+    this.stages = stages.toArray(new PruningStage[0]);
+    this.calls = new long[this.stages.length];
+    this.pruned = new long[this.stages.length];
+    this.sampledCalls = new long[this.stages.length];
+    this.sampledNanos = new long[this.stages.length];
+  }
+
+  // reach is filled from player the first time a stage needs it
+  boolean prunes(short[] boxes, int box, int player, PlayerReach reach) {
+    reachFilled = false;
+    for (int s = 0; s < stages.length; s++) {
+      boolean timed = (calls[s]++ & SAMPLE_MASK) == 0;
+      long start = timed ? System.nanoTime() : 0;
+      if (stages[s].needsReach() && !reachFilled) {
+        reach.fill(player, boxes);
+        reachFilled = true;
+      }
+      boolean dead = stages[s].prunes(boxes, box, player, reach);
+      if (timed) {
+        sampledNanos[s] += System.nanoTime() - start;
+        sampledCalls[s]++;
+      }
+      if (dead) {
+        pruned[s]++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Whether the last call filled the reach, so it still holds that layout
+  boolean reachFilled() {
+    return reachFilled;
+  }
+
+  long prunedTotal() {
+    long total = 0;
+    for (long count : pruned) total += count;
+    return total;
+  }
+
+  // Adds this pipeline's figures to the statistics, stage by stage
+  void record(SearchStatistics statistics) {
+    if (statistics.pruning.length == 0) {
+      statistics.pruning = new StageStatistics[stages.length];
+      for (int s = 0; s < stages.length; s++) statistics.pruning[s] = new StageStatistics(stages[s].name());
+    }
+    for (int s = 0; s < stages.length; s++) {
+      StageStatistics stage = statistics.pruning[s];
+      stage.calls += calls[s];
+      stage.pruned += pruned[s];
+      if (sampledCalls[s] > 0) stage.nanos += sampledNanos[s] * calls[s] / sampledCalls[s];
+    }
+  }
+}
@@ -0,0 +1,18 @@
+package solver;
+
+// One deadlock test in the PruningPipeline, run on the layout a push leaves
+// Stages keep scratch space, so each searching thread needs its own
+interface PruningStage {
+  String name();
+
+  // Whether the layout can never be solved; box is the pushed box's new cell
+  // and player the cell the player ends on, the box's old cell
+  // reach holds the player's reach in the new layout if needsReach() says so
+  boolean prunes(short[] boxes, int box, int player, PlayerReach reach);
+
+  // Stages that look at where the player can go share one flood fill,
+  // which the push generator then reuses to normalize the player
+  default boolean needsReach() {
+    return false;
+  }
+}
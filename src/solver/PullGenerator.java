@@ -0,0 +1,84 @@
+package solver;
+
+import java.util.Arrays;
+
+// Backward successor generation, every pull undoes one push
+// The player stands next to a box, steps away from it and drags the box
+// along. States share the forward search's layout, player normalization and
+// hashing, so a state reached from both ends is recognised as the same one.
+// Moves are recorded as the push that the pull undoes.
+final class PullGenerator {
+  private final Board board;
+  private final HeuristicEvaluator evaluator;
+  private final double weight;
+  private final PlayerReach reach;
+  private final PlayerReach normalizer;
+  long deadlocks; // pulls into cells the start boxes cannot reach
+
+  // The evaluator prices layouts against the start boxes, not the goals
+  PullGenerator(Board board, HeuristicEvaluator evaluator, double weight) {
+    this.board = board;
+    this.evaluator = evaluator;
+    this.weight = weight;
+    this.reach = new PlayerReach(board);
+    this.normalizer = new PlayerReach(board);
+  }
+
+  // Backward start states, every box on a goal with the player in one of the
+  // regions the goal layout leaves, or an empty array if a box can never get
+  // back to the start layout
+  State[] initial(short[] goals) {
+    int h = evaluator.evaluate(goals);
+    if (h >= Board.UNREACHABLE) return new State[0];
+
+    boolean[] covered = new boolean[board.cellCount];
+    State[] starts = new State[board.cellCount];
+    int count = 0;
+    for (int cell = 0; cell < board.cellCount; cell++) {
+      if (covered[cell] || Board.indexOf(goals, cell) >= 0) continue;
+      int player = normalizer.fill(cell, goals);
+      for (int other = cell; other < board.cellCount; other++) {
+        if (normalizer.canReach(other)) covered[other] = true;
+      }
+      State state = new State(player, goals, board.hashBoxes(goals) ^ board.playerKeys[player], 0, 0);
+      state.score(h, weight);
+      starts[count++] = state;
+    }
+    return Arrays.copyOf(starts, count);
+  }
+
+  // Writes every legal pull from a state into out and returns how many there are
+  int expand(State currentState, State[] out) {
+    short[] boxes = currentState.boxes;
+    reach.fill(currentState.player, boxes);
+
+    int count = 0;
+    for (int k = 0; k < boxes.length; k++) {
+      int box = boxes[k];
+      for (int i = 0; i < 4; i++) {
+        // The player stands where the box goes and backs off one more square
+        int newBoxPos = board.next[box * 4 + i];
+        if (newBoxPos < 0 || !reach.canReach(newBoxPos)) continue;
+        int player = board.next[newBoxPos * 4 + i];
+        if (player < 0 || Board.indexOf(boxes, player) >= 0) continue;
+
+        int h = evaluator.afterPush(currentState, k, box, newBoxPos);
+        if (h >= Board.UNREACHABLE) {
+          deadlocks++;
+          continue;
+        }
+
+        short[] newBoxes = Board.moveBox(boxes, k, newBoxPos);
+        int normalized = normalizer.fill(player, newBoxes);
+        long hash = (currentState.hash ^ board.playerKeys[currentState.player] ^ board.playerKeys[normalized])
+                ^ board.boxKeys[box] ^ board.boxKeys[newBoxPos];
+
+        State newState = new State(normalized, newBoxes, hash, currentState.cost + 1,
+                State.pushMove(newBoxPos, Board.opposite(i)));
+        newState.score(h, weight);
+        out[count++] = newState;
+      }
+    }
+    return count;
+  }
+}
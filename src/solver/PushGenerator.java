@@ -0,0 +1,145 @@
+package solver;
+
+// Push-level successor generation, shared by every search that works on
+// whole pushes with the player normalized to its reachable region
+// Holds flood fill scratch space, so each searching thread needs its own
+final class PushGenerator {
+  private final Board board;
+  private final HeuristicEvaluator evaluator;
+  private final PruningPipeline pruning;
+  private final MacroTable macros; // null for single pushes only
+  private final double weight;
+  private final PlayerReach reach;
+  private final PlayerReach normalizer;
+  private BoxRoute route;   // replays macro moves, made on first use
+  private long unmatchable; // pushes no box-to-goal matching could price
+  private long macroMoves;
+
+  PushGenerator(Board board, HeuristicEvaluator evaluator, PruningPipeline pruning, MacroTable macros,
+                double weight) {
+    this.board = board;
+    this.evaluator = evaluator;
+    this.pruning = pruning;
+    this.macros = macros;
+    this.weight = weight;
+    this.reach = new PlayerReach(board);
+    this.normalizer = new PlayerReach(board);
+  }
+
+  // Push mode start state, null if a box can never reach a goal
+  State initial(int player, short[] boxes) {
+    // Any square of the player's region stands for the whole region
+    int start = normalizer.fill(player, boxes);
+    long hash = board.hashBoxes(boxes) ^ board.playerKeys[start];
+    State state = new State(start, boxes, hash, 0, 0);
+    state.score(evaluator.evaluate(boxes), weight);
+    return state.h >= Board.UNREACHABLE ? null : state;
+  }
+
+  // Writes every legal push from a state into out and returns how many there are
+  // Player moves in between cost nothing and are rebuilt once the goal is found
+  int expand(State currentState, State[] out) {
+    short[] boxes = currentState.boxes;
+    reach.fill(currentState.player, boxes);
+
+    int count = 0;
+    for (int k = 0; k < boxes.length; k++) {
+      int box = boxes[k];
+      for (int i = 0; i < 4; i++) {
+        // The player has to stand behind the box
+        int behind = board.next[box * 4 + Board.opposite(i)];
+        if (behind < 0 || !reach.canReach(behind)) continue;
+
+        int newBoxPos = board.next[box * 4 + i];
+        if (board.isBlocked(newBoxPos, boxes)) continue;
+
+        // Slide through tunnels, then on to the next goal if that enters a goal room
+        int pushes = 1;
+        int pusher = box; // where the player ends up
+        if (macros != null) {
+          while (macros.slides(newBoxPos, i) && !board.isBlocked(board.next[newBoxPos * 4 + i], boxes)) {
+            pusher = newBoxPos;
+            newBoxPos = board.next[newBoxPos * 4 + i];
+            pushes++;
+          }
+          int entry = macros.roomEntry(boxes, k, newBoxPos, i);
+          if (entry >= 0) {
+            pusher = macros.player(entry);
+            newBoxPos = macros.target(entry);
+            pushes += macros.pushes(entry);
+          }
+        }
+
+        short[] newBoxes = Board.moveBox(boxes, k, newBoxPos);
+        if (pruning.prunes(newBoxes, newBoxPos, pusher, normalizer)) continue;
+
+        int h = evaluator.afterPush(currentState, k, box, newBoxPos);
+        if (h >= Board.UNREACHABLE) {
+          unmatchable++;
+          continue;
+        }
+
+        int player = pruning.reachFilled() ? normalizer.topLeft() : normalizer.fill(pusher, newBoxes);
+        long hash = (currentState.hash ^ board.playerKeys[currentState.player] ^ board.playerKeys[player])
+                ^ board.boxKeys[box] ^ board.boxKeys[newBoxPos];
+
+        int move = pushes == 1 ? State.pushMove(box, i) : State.macroMove(box, newBoxPos);
+        if (pushes > 1) macroMoves++;
+        State newState = new State(player, newBoxes, hash, currentState.cost + pushes, move);
+        newState.score(h, weight);
+        out[count++] = newState;
+      }
+    }
+    return count;
+  }
+
+  // Pushes thrown away as deadlocks so far, by any stage or the matching
+  long deadlocks() {
+    return unmatchable + pruning.prunedTotal();
+  }
+
+  // Adds the deadlock figures to the statistics
+  void record(SearchStatistics statistics) {
+    statistics.deadlocksPruned += deadlocks();
+    statistics.macroMoves += macroMoves;
+    pruning.record(statistics);
+  }
+
+  // Replays a sequence of push moves from the start, walking the player
+  // between them by the shortest route
+  String buildMoves(int[] path, int startPlayer, short[] startBoxes) {
+    StringBuilder moves = new StringBuilder();
+    int player = startPlayer;
+    short[] boxes = startBoxes;
+    for (int move : path) {
+      if (!State.isMacro(move)) {
+        boxes = replayPush(move, player, boxes, moves);
+        player = State.pushedBox(move);
+        continue;
+      }
+      // Find the macro's pushes again, on the layout as it is now
+      if (route == null) route = new BoxRoute(board);
+      if (route.find(boxes, Board.indexOf(boxes, State.macroBox(move)), player, State.macroTarget(move)) < 0) {
+        throw new IllegalStateException("macro move has no route on the layout it was generated for");
+      }
+      for (int p = 0; p < route.length(); p++) {
+        boxes = replayPush(route.push(p), player, boxes, moves);
+        player = State.pushedBox(route.push(p));
+      }
+    }
+    return moves.toString();
+  }
+
+  // Walks the player behind the box and pushes it, returns the new layout
+  // A push the player cannot get behind means the path is broken, better to
+  // fail than to hand out a solution that does not replay
+  private short[] replayPush(int move, int player, short[] boxes, StringBuilder moves) {
+    int box = State.pushedBox(move), direction = State.direction(move);
+    int behind = board.next[box * 4 + Board.opposite(direction)];
+    if (behind < 0 || !reach.walk(player, behind, boxes, moves)) {
+      throw new IllegalStateException("player cannot reach the push at cell " + box);
+    }
+    moves.append(Board.moves[direction]);
+    return Board.moveBox(boxes, Board.indexOf(boxes, box), board.next[box * 4 + direction]);
+  }
+}
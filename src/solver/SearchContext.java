@@ -0,0 +1,520 @@
+package solver;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One search's working state: the heuristic, pruning and push generation
+// tables with their scratch arrays, the statistics and the token, on top of
+// a Level that any number of contexts share
+// A context serves a single solve on a single thread, SokoBot makes a new
+// one for every solve, which is what lets one SokoBot run solves in parallel.
+final class SearchContext {
+  private final SokoBot owner; // frontier factory, overridden by the frontier benchmark
+  private final SolverOptions options;
+  private final Level level;
+  private final Board board;
+  private final PatternDatabase patterns;
+  private final MacroTable macros;
+  private final HeuristicEvaluator evaluator;
+  private final PruningPipeline pruning;
+  private final PushGenerator pushes;
+  private final PlayerReach stepReach; // scratch for the pruning stages in step mode
+  private final CancellationToken token;
+  private final ProgressListener listener;
+  private final SolutionListener solutionListener;
+  private final SearchStatistics statistics = new SearchStatistics();
+  private final long searchBudget; // what memoryBudget leaves for the search's tables
+  private int startPlayer;
+  private short[] startBoxes;
+  private SolveResult.Status status; // set when a search gives up early
+  private long searchStart;
+  private long nextProgress;
+
+  SearchContext(SokoBot owner, Level level, CancellationToken token, ProgressListener listener) {
+    long setupStart = System.nanoTime();
+    this.owner = owner;
+    this.options = owner.options;
+    this.level = level;
+    this.board = level.board;
+    this.token = token;
+    this.listener = listener;
+    this.solutionListener = owner.solutionListener;
+    // A weight that never falls to 1 would keep the anytime search going until the token stops it
+    if (options.algorithm == SolverOptions.Algorithm.ANYTIME
+            && (!(options.anytimeWeightStep > 0) || !Double.isFinite(options.anytimeWeight))) {
+      throw new IllegalArgumentException("anytime search needs a finite weight and a positive weight step");
+    }
+    this.patterns = level.patternsFor(options);
+    this.macros = level.macrosFor(options);
+    this.searchBudget = options.memoryBudget - (patterns == null ? 0 : patterns.tableBytes());
+    this.evaluator = new HeuristicEvaluator(board, options.heuristic, patterns);
+    this.pruning = new PruningPipeline(board, options);
+    this.stepReach = new PlayerReach(board);
+    this.pushes = new PushGenerator(board, evaluator, pruning, macros, options.weight);
+    statistics.preprocessNanos = System.nanoTime() - setupStart;
+  }
+
+  // Solution in lurd, empty if there is none or the search stopped early,
+  // getStatus() tells which. An anytime search stopped early returns its
+  // best so far with the stop status.
+  String solve(char[][] itemsData) {
+    State start = start(itemsData);
+    if (start == null) return "";
+    String solution = search(start);
+    // Anytime solutions are optimized as they are published
+    if (solution.isEmpty() || options.optimizeMillis <= 0 || options.algorithm == SolverOptions.Algorithm.ANYTIME) {
+      return solution;
+    }
+    return optimize(solution);
+  }
+
+  private String optimize(String solution) {
+    long start = System.nanoTime();
+    SolutionOptimizer optimizer = new SolutionOptimizer(board);
+    String shorter = optimizer.optimize(solution, startPlayer, startBoxes, start + options.optimizeMillis * 1000000);
+    statistics.optimizeNanos += System.nanoTime() - start;
+    statistics.movesSaved += solution.length() - shorter.length();
+    return shorter;
+  }
+
+  SolveResult.Status getStatus() {
+    return status;
+  }
+
+  SearchStatistics getStatistics() {
+    return statistics;
+  }
+
+  // Push generation of this search, for the benchmarks
+  PushGenerator getPushGenerator() {
+    return pushes;
+  }
+
+  // Start state from the items layer, null if the player or a box is off
+  // the level's floor
+  // Also used by the benchmarks to get at the per-node operations
+  State start(char[][] itemsData) {
+    int player = -1;
+    short[] boxes = new short[board.cellCount];
+    int boxCount = 0;
+    // Cells are numbered in row-major order so the boxes come out sorted
+    for (int y = 0; y < level.height; y++) {
+      for (int x = 0; x < level.width; x++) {
+        char item = itemsData[y][x];
+        if (item != '@' && item != '$') continue;
+        int cell = board.cellAt(x, y);
+        if (cell < 0) return null; // Somewhere the player can never reach
+        if (item == '@') player = cell;
+        else if (boxCount < boxes.length) boxes[boxCount++] = (short) cell;
+      }
+    }
+    if (player < 0) return null;
+    boxes = Arrays.copyOf(boxes, boxCount);
+
+    this.startPlayer = player;
+    this.startBoxes = boxes;
+    State start = new State(player, boxes, board.hashBoxes(boxes) ^ board.playerKeys[player], 0, 0);
+    start.score(heuristic(boxes), options.weight);
+    return start;
+  }
+
+  private String search(State start) {
+    // Solve using the selected algorithm
+    searchStart = System.nanoTime();
+    nextProgress = searchStart + options.progressInterval * 1000000;
+    String solution;
+    if (options.algorithm == SolverOptions.Algorithm.IDA_STAR) {
+      solution = idaStar(start.player, start.boxes);
+    } else if (options.algorithm == SolverOptions.Algorithm.EXTERNAL) {
+      solution = external(start.player, start.boxes);
+    } else if (options.algorithm == SolverOptions.Algorithm.ANYTIME) {
+      solution = anytime(start.player, start.boxes);
+    } else if (options.algorithm == SolverOptions.Algorithm.BIDIRECTIONAL && start.boxes.length == board.goals.length) {
+      solution = bidirectional(start.player, start.boxes);
+    } else {
+      // Spare goals leave no single solved layout to pull from
+      solution = aStar(start.player, start.boxes);
+    }
+    statistics.searchNanos = System.nanoTime() - searchStart;
+    return solution;
+  }
+
+  private String aStar(int start, short[] boxes) {
+    boolean pushMode = options.expansion == SolverOptions.Expansion.PUSH;
+    if (options.threads > 1) {
+      return parallelSearch(start, boxes);
+    }
+
+    Frontier frontier = owner.createFrontier(); // Ordered by the cached g(n) + h(n)
+    ClosedSet explored; // cheapest cost seen per state, macro pushes make costs uneven
+    try {
+      explored = new ClosedSet(boxes.length, searchBudget / 4 * 3, true);
+    } catch (MemoryBudgetExceededException ex) {
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return "";
+    }
+    State initial;
+    if (pushMode) {
+      initial = pushes.initial(start, boxes);
+      if (initial == null) return ""; // A box can never reach a goal
+    } else {
+      long hash = board.hashBoxes(boxes) ^ board.playerKeys[start];
+      initial = new State(start, boxes, hash, 0, 0);
+      initial.score(heuristic(boxes), options.weight);
+      if (initial.h >= Board.UNREACHABLE) return ""; // A box can never reach a goal
+    }
+    frontier.add(initial);
+    explored.addOrImprove(initial.player, initial.boxes, initial.hash, 0);
+    PathArena arena = new PathArena(searchBudget / 4);
+
+    try {
+      return search(frontier, explored, arena);
+    } catch (MemoryBudgetExceededException ex) {
+      // Give up cleanly instead of running the JVM out of heap
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return "";
+    } finally {
+      statistics.frontierSize = frontier.size();
+      pushes.record(statistics);
+      statistics.pathBytes = arena.allocatedBytes();
+      recordClosedSet(explored);
+    }
+  }
+
+  // Hash-distributed A* across options.threads workers, always over pushes
+  private String parallelSearch(int start, short[] boxes) {
+    ParallelSearch search = new ParallelSearch(board, options, patterns, macros, searchBudget, token, listener,
+            searchStart);
+    State goal;
+    try {
+      goal = search.search(start, boxes);
+    } catch (MemoryBudgetExceededException ex) {
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return "";
+    }
+    search.record(statistics);
+    status = search.getStatus();
+    if (goal == null || status != null) return "";
+    return reconstruct(search.path(goal), true);
+  }
+
+  // Memory-bounded search over pushes
+  private String idaStar(int start, short[] boxes) {
+    IdaSearch search = new IdaSearch(board, options, pushes, boxes.length, token, listener, searchStart);
+    int[] path = search.search(start, boxes);
+    search.record(statistics);
+    status = search.getStatus();
+    if (path == null || status != null) return "";
+    return reconstruct(path, true);
+  }
+
+  // Best-first search over pushes with its state sets on disk
+  private String external(int start, short[] boxes) {
+    ExternalSearch search = new ExternalSearch(board, options, pushes, boxes.length, token, listener, searchStart);
+    int[] path = search.search(start, boxes);
+    search.record(statistics);
+    status = search.getStatus();
+    if (path == null || status != null) return "";
+    return reconstruct(path, true);
+  }
+
+  // Forward pushes and backward pulls meeting in the middle
+  private String bidirectional(int start, short[] boxes) {
+    BidirectionalSearch search;
+    try {
+      search = new BidirectionalSearch(board, options, pushes, boxes, searchBudget, token, listener, searchStart);
+    } catch (MemoryBudgetExceededException ex) {
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return "";
+    }
+    int[] path;
+    try {
+      path = search.search(start, boxes);
+      status = search.getStatus();
+    } catch (MemoryBudgetExceededException ex) {
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return "";
+    } finally {
+      search.record(statistics);
+    }
+    if (path == null || status != null) return "";
+    return reconstruct(path, true);
+  }
+
+  // Anytime repairing A* over pushes: weighted A* whose weight falls from
+  // options.anytimeWeight to 1, each better solution goes to the listener as
+  // soon as it is found and the best one so far is returned when the token stops
+  // the search
+  // The g values, parent links and open list carry over between weights. A
+  // state reached more cheaply after it was expanded at a weight above 1
+  // waits in a side list until the next round, so each round only re-expands
+  // what the cheaper paths changed. At weight 1 such a state goes straight
+  // back to the open list, which makes the last round plain A* with
+  // reopening. States that cannot beat the best solution even at weight 1
+  // are dropped.
+  // Bound 1 means nothing shorter exists among the successors PushGenerator
+  // hands out. With macros on those skip some push orders, so it is the
+  // fewest pushes over the macro moves, not over every push sequence.
+  private String anytime(int start, short[] boxes) {
+    State initial = pushes.initial(start, boxes);
+    if (initial == null) return ""; // A box can never reach a goal
+
+    // One budget for all three tables, the cost table holds the most per state
+    long quarter = searchBudget / 4;
+    ClosedSet costs = null;
+    PathArena arena = new PathArena(quarter);
+    Frontier open = owner.createFrontier();
+    List<State> improved = new ArrayList<>(); // cheaper again after being expanded this round
+    State[] successors = new State[boxes.length * 4];
+    double weight = Math.max(1, options.anytimeWeight);
+    int best = Integer.MAX_VALUE; // pushes of the best solution so far
+    String solution = "";
+    try {
+      costs = new ClosedSet(boxes.length, 2 * quarter, true);
+      ClosedSet expanded = new ClosedSet(boxes.length, quarter); // this round's, cleared for the next
+      costs.addOrImprove(initial.player, initial.boxes, initial.hash, 0);
+      initial.score(initial.h, weight);
+      open.add(initial);
+
+      while (true) {
+        expanded.clear();
+        State goal = null;
+        while (!open.isEmpty() && goal == null) {
+          if (open.size() > statistics.peakFrontierSize) statistics.peakFrontierSize = open.size();
+          State state = open.poll();
+          // Copies left behind when a cheaper path was queued, and states that
+          // can no longer lead to a shorter solution
+          if (state.cost != costs.costOf(state.player, state.boxes, state.hash)) continue;
+          if (state.cost + state.h >= best) continue;
+          if (board.isSolved(state.boxes)) {
+            goal = state;
+            continue;
+          }
+          if (!expanded.add(state.player, state.boxes, state.hash) && weight > 1) continue;
+          statistics.nodesExpanded++;
+          if (state.f > statistics.bestF) statistics.bestF = state.f;
+
+          if ((statistics.nodesExpanded & 255) == 0) {
+            if (token.shouldStop()) {
+              status = token.stopStatus(); // the best so far is not proven
+              return solution;
+            }
+            if (listener != null) reportProgress(open, costs);
+          }
+
+          int count = pushes.expand(state, successors);
+          statistics.nodesGenerated += count;
+          for (int i = 0; i < count; i++) {
+            State next = successors[i];
+            if (next.cost + next.h >= best || !costs.addOrImprove(next.player, next.boxes, next.hash, next.cost)) {
+              statistics.duplicatesPruned++;
+              continue;
+            }
+            next.node = arena.add(state.node, next.move);
+            next.score(next.h, weight);
+            if (weight > 1 && expanded.contains(next.player, next.boxes, next.hash)) improved.add(next);
+            else open.add(next);
+          }
+        }
+
+        // Only a round at weight 1 leaves nothing in the side list, so only
+        // then is a goal it pops the shortest, or an emptied open list proof
+        // that nothing shorter than the best so far exists
+        if (goal != null) {
+          best = goal.cost;
+          solution = publish(goal, arena, weight);
+          if (weight <= 1) return solution;
+        } else if (weight <= 1) {
+          statistics.solutionBound = solution.isEmpty() ? 0 : 1;
+          return solution;
+        } else if (!solution.isEmpty()) {
+          statistics.solutionBound = weight;
+        }
+
+        // Next round: everything still worth expanding, including the states
+        // a cheaper path reached after they were expanded, scored with the
+        // lower weight
+        weight = Math.max(1, weight - options.anytimeWeightStep);
+        while (!open.isEmpty()) improved.add(open.poll());
+        for (State state : improved) {
+          if (state.cost + state.h >= best || state.cost != costs.costOf(state.player, state.boxes, state.hash)) {
+            continue;
+          }
+          state.score(state.h, weight);
+          open.add(state);
+        }
+        improved.clear();
+      }
+    } catch (MemoryBudgetExceededException ex) {
+      // The best solution so far still stands, unproven
+      status = SolveResult.Status.MEMORY_EXCEEDED;
+      return solution;
+    } finally {
+      statistics.frontierSize = open.size();
+      pushes.record(statistics);
+      statistics.pathBytes = arena.allocatedBytes();
+      if (costs != null) recordClosedSet(costs);
+    }
+  }
+
+  // Rebuilds and shortens a solution of the anytime search and hands it on
+  private String publish(State goal, PathArena arena, double bound) {
+    String solution = reconstruct(PathArena.path(new PathArena[] {arena}, goal.node), true);
+    if (options.optimizeMillis > 0) solution = optimize(solution);
+    statistics.improvements++;
+    statistics.solutionBound = bound;
+    if (solutionListener != null) solutionListener.onSolution(solution, bound);
+    return solution;
+  }
+
+  // Turns the moves recorded along the path into the lurd string, the only
+  // time the solution exists as text
+  private String reconstruct(int[] path, boolean pushMode) {
+    long start = System.nanoTime();
+    String moves;
+    if (pushMode) {
+      moves = pushes.buildMoves(path, startPlayer, startBoxes);
+    } else {
+      char[] steps = new char[path.length];
+      for (int i = 0; i < path.length; i++) steps[i] = Board.moves[path[i]];
+      moves = new String(steps);
+    }
+    statistics.reconstructNanos = System.nanoTime() - start;
+    return moves;
+  }
+
+  private String search(Frontier frontier, ClosedSet explored, PathArena arena) {
+    boolean pushMode = options.expansion == SolverOptions.Expansion.PUSH;
+    State[] successors = new State[startBoxes.length * 4];
+
+    while (!frontier.isEmpty()) {
+      if (frontier.size() > statistics.peakFrontierSize) statistics.peakFrontierSize = frontier.size();
+      State currentState = frontier.poll();
+      // A copy left behind when a cheaper path to the state was queued
+      if (currentState.cost != explored.costOf(currentState.player, currentState.boxes, currentState.hash)) continue;
+      statistics.nodesExpanded++;
+      if (currentState.f > statistics.bestF) statistics.bestF = currentState.f;
+
+      // Cooperative cancellation, deadline or another portfolio entry won
+      if ((statistics.nodesExpanded & 255) == 0) {
+        if (token.shouldStop()) {
+          status = token.stopStatus();
+          return "";
+        }
+        if (listener != null) reportProgress(frontier, explored);
+      }
+
+      // Check if we reached the goal
+      if (board.isSolved(currentState.boxes)) {
+        return reconstruct(PathArena.path(new PathArena[] {arena}, currentState.node), pushMode);
+      }
+
+      if (pushMode) {
+        int count = pushes.expand(currentState, successors);
+        statistics.nodesGenerated += count;
+        for (int i = 0; i < count; i++) {
+          State newState = successors[i];
+          // A tunnel slide or room entry can reach a state already queued by
+          // more pushes, the cheaper path replaces it and reopens the state
+          if (explored.addOrImprove(newState.player, newState.boxes, newState.hash, newState.cost)) {
+            newState.node = arena.add(currentState.node, newState.move);
+            frontier.add(newState);
+          } else {
+            statistics.duplicatesPruned++;
+          }
+        }
+        continue;
+      }
+
+      // Try each direction
+      for (int i = 0; i < 4; i++) {
+        State newState = move(currentState, i);
+        if (newState == null) continue;
+
+        statistics.nodesGenerated++;
+        if (explored.addOrImprove(newState.player, newState.boxes, newState.hash, newState.cost)) {
+          newState.node = arena.add(currentState.node, newState.move);
+          frontier.add(newState);
+        } else {
+          statistics.duplicatesPruned++;
+        }
+      }
+    }
+
+    return ""; // No solution found
+  }
+
+  // Hands the listener a snapshot once the interval has passed, the clock is
+  // only read on the cancellation checks so this stays off the per-node path
+  private void reportProgress(Frontier frontier, ClosedSet explored) {
+    long now = System.nanoTime();
+    if (now < nextProgress) return;
+    nextProgress = now + options.progressInterval * 1000000;
+
+    SearchStatistics progress = statistics.copy();
+    progress.searchNanos = now - searchStart;
+    progress.frontierSize = frontier.size();
+    pushes.record(progress);
+    progress.closedStates = explored.size();
+    listener.onProgress(progress);
+  }
+
+  private void recordClosedSet(ClosedSet explored) {
+    statistics.closedStates = explored.size();
+    statistics.closedCapacity = explored.capacity();
+    statistics.closedLoadFactor = explored.loadFactor();
+    statistics.closedBytesPerState = explored.bytesPerState();
+    statistics.closedBytes = explored.allocatedBytes();
+  }
+
+  // Branch out state, returns null if invalid
+  State move(State currentState, int i) {
+    int newPlayer = board.next[currentState.player * 4 + i];
+
+    // Check if move is valid
+    if (newPlayer < 0) return null;
+
+    long hash = currentState.hash ^ board.playerKeys[currentState.player] ^ board.playerKeys[newPlayer];
+    short[] newBoxes = currentState.boxes;
+    int cost = currentState.cost;
+    int h = currentState.h;
+
+    // Check if a box got pushed
+    int boxIndex = Board.indexOf(currentState.boxes, newPlayer);
+    if (boxIndex >= 0) {
+      int newBoxPos = board.next[newPlayer * 4 + i];
+
+      // Check if push is valid, deadlock detection
+      if (board.isBlocked(newBoxPos, currentState.boxes)) return null;
+
+      // Boxes are shared between states until one is pushed
+      newBoxes = Board.moveBox(currentState.boxes, boxIndex, newBoxPos);
+      if (pruning.prunes(newBoxes, newBoxPos, newPlayer, stepReach)) return null;
+      hash ^= board.boxKeys[newPlayer] ^ board.boxKeys[newBoxPos];
+      cost++; // Cost prioritizes smallest amount of push count
+      h = heuristicAfterPush(currentState, boxIndex, newPlayer, newBoxPos);
+      if (h >= Board.UNREACHABLE) {
+        statistics.deadlocksPruned++;
+        return null;
+      }
+    }
+
+    State newState = new State(newPlayer, newBoxes, hash, cost, i);
+    newState.score(h, options.weight);
+    return newState;
+  }
+
+  // Deadlock detection, dead squares come from the level tables
+  boolean isBoxStuck(int box, short[] boxes) {
+    return board.isBoxStuck(box, boxes);
+  }
+
+  int heuristic(short[] boxes) {
+    return evaluator.evaluate(boxes);
+  }
+
+  int heuristicAfterPush(State state, int boxIndex, int from, int to) {
+    return evaluator.afterPush(state, boxIndex, from, to);
+  }
+}
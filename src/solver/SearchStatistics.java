@@ -0,0 +1,83 @@
+package solver;
+
+// Figures collected during the last solve, or so far when handed to a
+// ProgressListener while the search is still running
+public class SearchStatistics implements Cloneable {
+  // Phase timers, reconstruction is the part of the search that rebuilds
+  // the move string once the goal is found
+  public long preprocessNanos;
+  public long searchNanos;
+  public long reconstructNanos;
+  public long optimizeNanos;
+  public int movesSaved; // by SolutionOptimizer
+  public int improvements;     // solutions an anytime search published
+  public double solutionBound; // weight of the last one, 1 once no shorter one is left in the searched moves
+  public boolean fromCache; // replayed from a SolutionCache, searchNanos is the lookup
+
+  public long nodesExpanded;
+  public long nodesGenerated;    // successors produced by expansion
+  public long duplicatesPruned;  // successors already in the closed set
+  public long deadlocksPruned;   // pushes the pruning stages threw out or no matching could price
+  public StageStatistics[] pruning = new StageStatistics[0]; // per stage, in pipeline order
+  public long macroMoves;        // successors made of several pushes, see MacroTable
+
+  public int frontierSize;
+  public int peakFrontierSize;
+  public int bestF = -1; // f of the latest expanded node, the cost lower bound at weight 1
+
+  public int closedStates;
+  public int closedCapacity;
+  public double closedLoadFactor;
+  public double closedBytesPerState;
+  public long closedBytes;
+  public long pathBytes; // parent and move per accepted state, see PathArena
+  public long diskBytesWritten; // bucket, run and closed files of the external search
+
+  public double nodesPerSecond() {
+    return searchNanos == 0 ? 0 : nodesExpanded * 1000000000.0 / searchNanos;
+  }
+
+  public SearchStatistics copy() {
+    try {
+      SearchStatistics copy = (SearchStatistics) clone();
+      copy.pruning = new StageStatistics[pruning.length];
+      for (int s = 0; s < pruning.length; s++) {
+        copy.pruning[s] = new StageStatistics(pruning[s].name);
+        copy.pruning[s].calls = pruning[s].calls;
+        copy.pruning[s].pruned = pruning[s].pruned;
+        copy.pruning[s].nanos = pruning[s].nanos;
+      }
+      return copy;
+    } catch (CloneNotSupportedException ex) {
+      throw new AssertionError(ex);
+    }
+  }
+
+  public void print() {
+    System.out.println("Preprocessing: " + String.format("%.2f", preprocessNanos / 1000000.0) + "ms");
+    System.out.println("Search: " + String.format("%.2f", searchNanos / 1000000.0) + "ms"
+            + (fromCache ? " (from cache)" : " (reconstruction " + String.format("%.2f", reconstructNanos / 1000000.0) + "ms)"));
+    if (optimizeNanos > 0) {
+      System.out.println("Optimization: " + String.format("%.2f", optimizeNanos / 1000000.0) + "ms, "
+              + movesSaved + " moves saved");
+    }
+    if (improvements > 0) {
+      System.out.println("Anytime: " + improvements + " solutions, bound " + String.format("%.2f", solutionBound));
+    }
+    System.out.println("Nodes expanded: " + nodesExpanded + " (" + String.format("%.0f", nodesPerSecond()) + "/s)");
+    System.out.println("Nodes generated: " + nodesGenerated);
+    System.out.println("Pruned: " + duplicatesPruned + " duplicates, " + deadlocksPruned + " deadlocks");
+    System.out.println("Macro moves: " + macroMoves);
+    for (StageStatistics stage : pruning) {
+      System.out.println("  " + stage.name + ": " + stage.pruned + " of " + stage.calls + " pruned in "
+              + String.format("%.2f", stage.nanos / 1000000.0) + "ms");
+    }
+    System.out.println("Frontier: " + frontierSize + " (peak " + peakFrontierSize + "), best f " + bestF);
+    System.out.println("Closed states: " + closedStates + " / " + closedCapacity);
+    System.out.println("Load factor: " + String.format("%.3f", closedLoadFactor));
+    System.out.println("Bytes per state: " + String.format("%.1f", closedBytesPerState)
+            + " (" + closedBytes + " bytes)");
+    System.out.println("Path arena: " + pathBytes + " bytes");
+    if (diskBytesWritten > 0) System.out.println("Disk written: " + diskBytesWritten + " bytes");
+  }
+}
@@ -1,226 +1,181 @@
 package solver;
 import java.util.*;
+import java.util.concurrent.*;
 
+// Entry point of the solver, holds only settings, so one instance can run
+// any number of solves at once on different threads
+// Each solve builds a Level, unless it is handed one to share, and a fresh
+// SearchContext for its own working state.
 public class SokoBot {
-  // Position class to track coordinates
-  private static class Position {
-    int x, y;
-    Position(int x, int y) {
-      this.x = x;
-      this.y = y;
-    }
+  final SolverOptions options;
+  private volatile ProgressListener listener;
+  volatile SolutionListener solutionListener;
+  private volatile SolutionCache cache;
+  private volatile SearchStatistics statistics = new SearchStatistics(); // of the last solve to finish
+  private volatile SolverOptions portfolioWinner;
+
+  public SokoBot() {
+    this(new SolverOptions());
+  }
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) return true;
-      if (o == null || getClass() != o.getClass()) return false;
-      Position position = (Position) o;
-      return x == position.x && y == position.y;
-    }
+  public SokoBot(SolverOptions options) {
+    this.options = options;
+  }
 
-    @Override
-    public int hashCode() {
-      return Objects.hash(x, y);
-    }
+  public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
+    return solve(width, height, mapData, itemsData, new CancellationToken()).solution;
   }
 
-  // State class to represent game state
-  private static class State {
-    Position player;
-    Set<Position> boxes;
-    int cost;
-    String moves;
-    State parent;
-
-    State(Position player, Set<Position> boxes, int cost, String moves, State parent) {
-      this.player = player;
-      this.boxes = new HashSet<>(boxes);
-      this.cost = cost;
-      this.moves = moves;
-      this.parent = parent;
-    }
+  // Solves until a solution is found, the level is proven unsolvable or the
+  // token stops the search
+  public SolveResult solve(int width, int height, char[][] mapData, char[][] itemsData, CancellationToken token) {
+    SolveResult cached = cached(width, height, mapData, itemsData);
+    if (cached != null) return cached;
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) return true;
-      if (o == null || getClass() != o.getClass()) return false;
-      State state = (State) o;
-      return player.equals(state.player) && boxes.equals(state.boxes);
-    }
+    // Indexed from the player, the level's preprocessing counts towards this solve
+    Level level = Level.of(width, height, mapData, itemsData, options);
+    if (level == null) return finish(new SolveResult(SolveResult.Status.UNSOLVABLE, "", new SearchStatistics()));
+    return search(level, itemsData, token, level.preprocessNanos);
+  }
 
-    @Override
-    public int hashCode() {
-      return Objects.hash(player, boxes);
-    }
+  // Solves a start layout on a level built beforehand, possibly shared with
+  // solves running on other threads
+  public SolveResult solve(Level level, char[][] itemsData, CancellationToken token) {
+    SolveResult cached = cached(level.width, level.height, level.mapData, itemsData);
+    if (cached != null) return cached;
+    return search(level, itemsData, token, 0);
   }
 
-  private char[][] map;
-  private Set<Position> goals;
-  private static final int[] dx = {-1, 1, 0, 0}; // left, right, up, down
-  private static final int[] dy = {0, 0, -1, 1};
-  private static final char[] moves = {'l', 'r', 'u', 'd'};
+  private SolveResult cached(int width, int height, char[][] mapData, char[][] itemsData) {
+    SolutionCache cache = this.cache;
+    if (cache == null) return null;
+    long lookupStart = System.nanoTime();
+    String solution = cache.get(width, height, mapData, itemsData, options);
+    if (solution == null) return null;
+    SearchStatistics statistics = new SearchStatistics();
+    statistics.fromCache = true;
+    statistics.searchNanos = System.nanoTime() - lookupStart;
+    return finish(new SolveResult(SolveResult.Status.SOLVED, solution, statistics));
+  }
 
-  public String solveSokobanPuzzle(int width, int height, char[][] mapData, char[][] itemsData) {
-    // Initialize map and goal points
-    this.map = mapData;
-    this.goals = new HashSet<>();
-
-    // Read data
-    Position playerPos = null;
-    Set<Position> boxes = new HashSet<>();
-
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        if (mapData[y][x] == '.') {
-          goals.add(new Position(x, y));
-        }
-        if (itemsData[y][x] == '@') {
-          playerPos = new Position(x, y);
-        } else if (itemsData[y][x] == '$') {
-          boxes.add(new Position(x, y));
-        }
-      }
+  private SolveResult search(Level level, char[][] itemsData, CancellationToken token, long levelNanos) {
+    SearchContext context = new SearchContext(this, level, token, listener);
+    String solution = context.solve(itemsData);
+    SearchStatistics statistics = context.getStatistics();
+    statistics.preprocessNanos += levelNanos;
+
+    // An anytime search stopped early keeps its stop status next to its best solution
+    SolveResult.Status status = context.getStatus();
+    if (status == null) status = solution.isEmpty() ? SolveResult.Status.UNSOLVABLE : SolveResult.Status.SOLVED;
+    SolutionCache cache = this.cache;
+    if (cache != null && status == SolveResult.Status.SOLVED) {
+      cache.put(level.width, level.height, level.mapData, itemsData, options, solution);
     }
+    return finish(new SolveResult(status, solution, statistics));
+  }
 
-    // Solve using A*
-    return aStar(playerPos, boxes, width, height);
+  private SolveResult finish(SolveResult result) {
+    statistics = result.statistics;
+    return result;
   }
 
-  private String aStar(Position start, Set<Position> boxes, int width, int height) {
-    PriorityQueue<State> frontier = new PriorityQueue<>((a, b) ->
-            (a.cost + heuristic(a.boxes)) - (b.cost + heuristic(b.boxes))); // Compares g(n) + h(n)
-    Set<String> explored = new HashSet<>();
-    //int stateCount = 0; // debug thing
+  // Receives live snapshots of each following solve, null turns it off
+  // Solves on several threads call it from each of them
+  public void setProgressListener(ProgressListener listener) {
+    this.listener = listener;
+  }
 
-    State initial = new State(start, boxes, 0, "", null);
-    frontier.add(initial);
-    explored.add(stringState(initial));
+  // Handed every better solution of the anytime search, null turns it off
+  public void setSolutionListener(SolutionListener solutionListener) {
+    this.solutionListener = solutionListener;
+  }
 
-    while (!frontier.isEmpty()) {
-      State currentState = frontier.poll();
+  // Checked before each following solve and given every solution, null turns it off
+  public void setSolutionCache(SolutionCache cache) {
+    this.cache = cache;
+  }
 
-      // Check if we reached the goal
-      if (heuristic(currentState.boxes) == 0) {
-        //System.out.println("States visited: " + stateCount); // debug thing
-        return currentState.moves;
-      }
+  // Races several strategies against each other and returns the first solution
+  // The losers are cancelled and stop at their next cancellation check
+  public SolveResult solvePortfolio(int width, int height, char[][] mapData, char[][] itemsData,
+                                    List<SolverOptions> strategies, CancellationToken token) {
+    SearchStatistics statistics = new SearchStatistics();
+    this.portfolioWinner = null;
+    if (strategies.isEmpty()) return new SolveResult(SolveResult.Status.UNSOLVABLE, "", statistics);
+    // The entrants share one set of level tables
+    Level level = Level.of(width, height, mapData, itemsData, strategies.get(0));
+    if (level == null) return new SolveResult(SolveResult.Status.UNSOLVABLE, "", statistics);
+
+    ExecutorService executor = Executors.newFixedThreadPool(strategies.size(), runnable -> {
+      Thread thread = new Thread(runnable, "portfolio");
+      thread.setDaemon(true);
+      return thread;
+    });
+    CancellationToken race = token.child();
+    CompletionService<SolveResult> results = new ExecutorCompletionService<>(executor);
+    Map<Future<SolveResult>, SolverOptions> strategyOf = new HashMap<>();
+    for (SolverOptions strategy : strategies) {
+      SokoBot entrant = new SokoBot(strategy);
+      strategyOf.put(results.submit(() -> entrant.solve(level, itemsData, race)), strategy);
+    }
 
-      // Try each direction
-      for (int i = 0; i < 4; i++) {
-        State newState = move(currentState, i, width, height);
-
-        if (newState != null) {
-          String stateStr = stringState(newState);
-          if (!explored.contains(stateStr)) {
-            //stateCount++; // debug thing
-            explored.add(stateStr);
-            frontier.add(newState);
-          }
+    SolveResult outcome = new SolveResult(SolveResult.Status.CANCELLED, "", statistics);
+    try {
+      for (int i = 0; i < strategies.size(); i++) {
+        Future<SolveResult> finished = results.take();
+        SolveResult result;
+        try {
+          result = finished.get();
+        } catch (ExecutionException ex) {
+          continue;
+        }
+        outcome = result;
+        // Every strategy searches the same states, so one exhausting them settles it
+        if (result.isSolved() || result.status == SolveResult.Status.UNSOLVABLE) {
+          if (result.isSolved()) portfolioWinner = strategyOf.get(finished);
+          break;
         }
       }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      outcome = new SolveResult(SolveResult.Status.CANCELLED, "", statistics);
+    } finally {
+      race.cancel();
+      executor.shutdownNow();
     }
-
-    return ""; // No solution found
+    this.statistics = outcome.statistics;
+    return outcome;
   }
 
-  // Branch out state, returns null if invalid
-  private State move(State currentState, int i, int width, int height) {
-    Position newPlayer = new Position(
-            currentState.player.x + dx[i],
-            currentState.player.y + dy[i]
-    );
-
-    // Check if move is valid
-    if (isWallAt(newPlayer, width, height)) return null;
-
-    // Check if a box got pushed
-    Position boxPos = null;
-    Position newBoxPos = null;
-    if (currentState.boxes.contains(newPlayer)) {
-      boxPos = newPlayer;
-      newBoxPos = new Position(
-              newPlayer.x + dx[i],
-              newPlayer.y + dy[i]
-      );
-
-      // Check if push is valid, deadlock detection
-      if (isBoxStuck(newBoxPos, currentState.boxes, width, height))
-        return null;
-    }
+  public String solvePortfolio(int width, int height, char[][] mapData, char[][] itemsData) {
+    return solvePortfolio(width, height, mapData, itemsData, defaultPortfolio(), new CancellationToken()).solution;
+  }
 
-    // Create new state, update box set if pushed
-    Set<Position> newBoxes = new HashSet<>(currentState.boxes);
-    if (boxPos != null) {
-      newBoxes.remove(boxPos);
-      newBoxes.add(newBoxPos);
+  // Optimal A*, weighted A*, near-greedy best-first and breadth-first over pushes
+  public static List<SolverOptions> defaultPortfolio() {
+    List<SolverOptions> strategies = new ArrayList<>();
+    for (double weight : new double[] {1, 2, 10, 0}) {
+      SolverOptions options = new SolverOptions();
+      options.weight = weight;
+      strategies.add(options);
     }
-
-    // Cost prioritizes smallest amount of push count
-    return new State(
-            newPlayer,
-            newBoxes,
-            boxPos != null ? currentState.cost + 1 : currentState.cost,
-            currentState.moves + moves[i],
-            currentState
-    );
+    return strategies;
   }
 
-  //Checks if new object position is a wall
-  private boolean isWallAt(Position pos, int width, int height) {
-    return pos.x >= 0 && pos.x < width &&
-            pos.y >= 0 && pos.y < height &&
-            map[pos.y][pos.x] == '#';
+  // Strategy that produced the last portfolio solution, null if none did
+  public SolverOptions getPortfolioWinner() {
+    return portfolioWinner;
   }
 
-  // Deadlock detection, corner checking
-  private boolean isBoxStuck(Position box, Set<Position> boxes, int width, int height) {
-
-    if (isWallAt(box, width, height) || boxes.contains(box)) return true;
-
-    if (goals.contains(box)) return false;
 
-    Position left = new Position(box.x - 1, box.y);
-    Position right = new Position(box.x + 1, box.y);
-    Position up = new Position(box.x, box.y - 1);
-    Position down = new Position(box.x, box.y + 1);
-
-    // Check for corner deadlocks
-    return (isWallAt(left, width, height) && isWallAt(up, width, height)) ||
-            (isWallAt(right, width, height) && isWallAt(up, width, height)) ||
-            (isWallAt(left, width, height) && isWallAt(down, width, height)) ||
-            (isWallAt(right, width, height) && isWallAt(down, width, height));
+  // Statistics of the last solve to finish
+  public SearchStatistics getStatistics() {
+    return statistics;
   }
 
-  // Heuristic function, Manhattan distance to a box's closest goal
-  // Skips boxes on goals
-  private int heuristic(Set<Position> boxes) {
-    int total = 0;
-    for (Position box : boxes) {
-      if (!goals.contains(box)) {
-        int minDist = Integer.MAX_VALUE;
-        for (Position goal : goals) {
-          int dist = Math.abs(box.x - goal.x) + Math.abs(box.y - goal.y);
-          minDist = Math.min(minDist, dist);
-        }
-        total += minDist;
-      }
-    }
-    return total;
-  }
-
-  // Convert player and box values to String
-  // Made to access explored set faster
-  private String stringState(State state) {
-    StringBuilder sb = new StringBuilder();
-    sb.append(state.player.x).append(',').append(state.player.y).append(';');
-    List<Position> sortedBoxes = new ArrayList<>(state.boxes);
-    sortedBoxes.sort((a, b) -> {
-      if (a.y != b.y) return a.y - b.y;
-      return a.x - b.x;
-    });
-    for (Position box : sortedBoxes) {
-      sb.append(box.x).append(',').append(box.y).append(';');
-    }
-    return sb.toString();
+  // Overridden by the frontier benchmark to record the queue operations
+  Frontier createFrontier() {
+    if (options.frontier == SolverOptions.FrontierType.HEAP) return new HeapFrontier();
+    return new BucketFrontier();
   }
-}
\ No newline at end of file
+}
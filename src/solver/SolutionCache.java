@@ -0,0 +1,253 @@
+package solver;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Solutions of levels solved before, looked up before searching
+// A level is keyed by a 64-bit FNV-1a hash of its canonical form: both grids
+// cropped to their used squares, then the smallest rendering over the 8
+// rotations and reflections, so a level and its mirror images share an entry.
+// The options that decide what a solve returns go into the key as well, so a
+// hit is what a solve with the same settings would have found: a weighted or
+// bidirectional solution never answers a caller that wants the fewest pushes.
+// Solutions are kept in that canonical orientation and turned back on the
+// way out. Recently used entries live in a bounded LRU map, and every entry
+// is also appended to a store file indexed by offset when the cache opens,
+// later lines for a key win. Each hit is replayed on the actual level before
+// it is returned, so a hash collision or damaged line is a miss, never a
+// wrong answer. Safe to share between solver threads.
+public class SolutionCache {
+  private final LinkedHashMap<Long, String> recent;
+  private final Map<Long, Long> stored = new HashMap<>(); // key -> offset << 24 | length of its latest line
+  private RandomAccessFile store; // null keeps the cache in memory only
+
+  public long hits;
+  public long misses;
+
+  // storeFile null keeps the cache in memory, a store that cannot be opened does too
+  public SolutionCache(int capacity, String storeFile) {
+    this.recent = new LinkedHashMap<Long, String>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
+        return size() > capacity;
+      }
+    };
+    if (storeFile == null) return;
+    try {
+      store = new RandomAccessFile(storeFile, "rw");
+      index();
+    } catch (IOException ex) {
+      ex.printStackTrace(System.out);
+      store = null;
+    }
+  }
+
+  // Cached solution for the level in its own orientation, null on a miss
+  public synchronized String get(int width, int height, char[][] mapData, char[][] itemsData,
+                                 SolverOptions options) {
+    Canonical level = new Canonical(width, height, mapData, itemsData, options);
+    String solution = recent.get(level.key);
+    if (solution == null) solution = read(level.key);
+    if (solution != null) {
+      String actual = level.restore(solution);
+      SolutionReplay replay = SolutionReplay.of(width, height, mapData, itemsData, actual);
+      if (replay.legal && replay.solved) {
+        recent.put(level.key, solution);
+        hits++;
+        return actual;
+      }
+      recent.remove(level.key);
+    }
+    misses++;
+    return null;
+  }
+
+  // Only for solutions of a finished search, not the best so far of one cut short
+  public synchronized void put(int width, int height, char[][] mapData, char[][] itemsData,
+                               SolverOptions options, String solution) {
+    Canonical level = new Canonical(width, height, mapData, itemsData, options);
+    String canonical = level.canonicalize(solution);
+    recent.put(level.key, canonical);
+    if (store == null) return;
+    try {
+      byte[] line = (String.format("%016x ", level.key) + canonical + "\n").getBytes(StandardCharsets.US_ASCII);
+      long offset = store.length();
+      store.seek(offset);
+      store.write(line);
+      stored.put(level.key, offset << 24 | line.length);
+    } catch (IOException ex) {
+      ex.printStackTrace(System.out); // still cached in memory
+    }
+  }
+
+  public synchronized void close() {
+    if (store == null) return;
+    try {
+      store.close();
+    } catch (IOException ex) {
+      ex.printStackTrace(System.out);
+    }
+    store = null;
+  }
+
+  // Lines are "<key in hex> <solution>", a line cut short by a crash is dropped
+  private void index() throws IOException {
+    byte[] data = new byte[(int) store.length()];
+    store.readFully(data);
+    int start = 0;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] != '\n') continue;
+      if (i - start > 17 && data[start + 16] == ' ') {
+        try {
+          long key = Long.parseUnsignedLong(new String(data, start, 16, StandardCharsets.US_ASCII), 16);
+          stored.put(key, (long) start << 24 | (i + 1 - start));
+        } catch (NumberFormatException ex) {
+          // Not one of ours, skip it
+        }
+      }
+      start = i + 1;
+    }
+    if (start < data.length) store.setLength(start);
+  }
+
+  private String read(long key) {
+    Long entry = stored.get(key);
+    if (entry == null || store == null) return null;
+    try {
+      byte[] line = new byte[(int) (entry & 0xFFFFFF)];
+      store.seek(entry >>> 24);
+      store.readFully(line);
+      return new String(line, 17, line.length - 18, StandardCharsets.US_ASCII);
+    } catch (IOException ex) {
+      ex.printStackTrace(System.out);
+      return null;
+    }
+  }
+
+  // A level in its canonical orientation
+  // Symmetry bits: 4 swaps x and y, then 1 mirrors x and 2 mirrors y
+  private static final class Canonical {
+    final long key;
+    private final int symmetry;
+
+    Canonical(int width, int height, char[][] mapData, char[][] itemsData, SolverOptions options) {
+      // Crop to the squares in use, the margins carry no information
+      int left = width, right = -1, top = height, bottom = -1;
+      char[][] squares = new char[height][width];
+      for (int y = 0; y < height; y++) {
+        for (int x = 0; x < width; x++) {
+          squares[y][x] = square(mapData[y][x], itemsData[y][x]);
+          if (squares[y][x] == ' ') continue;
+          left = Math.min(left, x);
+          right = Math.max(right, x);
+          top = Math.min(top, y);
+          bottom = Math.max(bottom, y);
+        }
+      }
+      int columns = Math.max(0, right - left + 1), rows = Math.max(0, bottom - top + 1);
+
+      String best = null;
+      int bestSymmetry = 0;
+      for (int symmetry = 0; symmetry < 8; symmetry++) {
+        boolean swap = (symmetry & 4) != 0;
+        int w = swap ? rows : columns, h = swap ? columns : rows;
+        StringBuilder text = new StringBuilder(w * h + 12).append(w).append('x').append(h).append('\n');
+        for (int y = 0; y < h; y++) {
+          for (int x = 0; x < w; x++) {
+            int u = (symmetry & 1) != 0 ? w - 1 - x : x;
+            int v = (symmetry & 2) != 0 ? h - 1 - y : y;
+            text.append(swap ? squares[top + u][left + v] : squares[top + v][left + u]);
+          }
+          text.append('\n');
+        }
+        String rendering = text.toString();
+        if (best == null || rendering.compareTo(best) < 0) {
+          best = rendering;
+          bestSymmetry = symmetry;
+        }
+      }
+      this.symmetry = bestSymmetry;
+
+      long hash = 0xcbf29ce484222325L;
+      for (int i = 0; i < best.length(); i++) {
+        hash = fnv(hash, best.charAt(i));
+      }
+      this.key = fnv(hash, variant(options));
+    }
+
+    // The settings that change which solution a solve returns, budgets and
+    // time limits only change whether it finds one
+    private static long variant(SolverOptions options) {
+      long hash = 0xcbf29ce484222325L;
+      hash = fnv(hash, options.algorithm.ordinal());
+      hash = fnv(hash, options.expansion.ordinal());
+      hash = fnv(hash, options.heuristic.ordinal());
+      hash = fnv(hash, Double.doubleToLongBits(options.weight));
+      hash = fnv(hash, options.threads > 1 ? 1 : 0);
+      hash = fnv(hash, Double.doubleToLongBits(options.anytimeWeight));
+      hash = fnv(hash, Double.doubleToLongBits(options.anytimeWeightStep));
+      hash = fnv(hash, (options.pruneDeadSquares ? 1 : 0) | (options.pruneFrozenBoxes ? 2 : 0)
+              | (options.pruneCorrals ? 4 : 0) | (options.tunnelMacros ? 8 : 0) | (options.goalRoomMacros ? 16 : 0)
+              | (options.optimizeMillis > 0 ? 32 : 0));
+      return hash;
+    }
+
+    private static long fnv(long hash, long value) {
+      hash ^= value;
+      return hash * 0x100000001b3L;
+    }
+
+    // Solution in the level's orientation to the canonical one
+    String canonicalize(String solution) {
+      return turn(solution, false);
+    }
+
+    // Solution in the canonical orientation back to the level's
+    String restore(String solution) {
+      return turn(solution, true);
+    }
+
+    private String turn(String solution, boolean back) {
+      char[] directions = new char[4];
+      for (int i = 0; i < 4; i++) {
+        int dx = Board.dx[i], dy = Board.dy[i];
+        if ((symmetry & 4) != 0) {
+          int swap = dx;
+          dx = dy;
+          dy = swap;
+        }
+        if ((symmetry & 1) != 0) dx = -dx;
+        if ((symmetry & 2) != 0) dy = -dy;
+        int turned = direction(dx, dy);
+        if (back) directions[turned] = Board.moves[i];
+        else directions[i] = Board.moves[turned];
+      }
+      String names = new String(Board.moves);
+      char[] moves = solution.toCharArray();
+      for (int i = 0; i < moves.length; i++) {
+        int direction = names.indexOf(moves[i]);
+        if (direction >= 0) moves[i] = directions[direction];
+      }
+      return new String(moves);
+    }
+
+    private static int direction(int dx, int dy) {
+      for (int i = 0; i < 4; i++) {
+        if (Board.dx[i] == dx && Board.dy[i] == dy) return i;
+      }
+      throw new AssertionError();
+    }
+
+    private static char square(char map, char item) {
+      if (map == '#') return '#';
+      boolean goal = map == '.';
+      if (item == '$') return goal ? '*' : '$';
+      if (item == '@') return goal ? '+' : '@';
+      return goal ? '.' : ' ';
+    }
+  }
+}
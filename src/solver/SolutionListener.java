@@ -0,0 +1,9 @@
+package solver;
+
+// Receives every better solution an anytime search finds, on the searching
+// thread and while the search goes on looking for a shorter one
+// bound is the weight the solution was found at, so its pushes are at most
+// that many times the fewest possible, 1 once no shorter one can exist
+public interface SolutionListener {
+  void onSolution(String solution, double bound);
+}
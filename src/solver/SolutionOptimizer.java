@@ -0,0 +1,198 @@
+package solver;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Shortens a solution once the search has found it, within a time budget
+// The solution is cut into its pushes and written out again with the
+// shortest walk before each one. Stretches that lead back to a layout seen
+// before, with the player in the same region, are cut out, which saves
+// pushes. Then runs of pushes on one box are moved a few runs earlier or
+// later, next to another run of the same box or past boxes they do not
+// touch, keeping every change that still solves the level in fewer moves.
+final class SolutionOptimizer {
+  private static final int WINDOW = 6; // runs a run may move past in one change
+
+  private final Board board;
+  private final PlayerReach reach;
+  private final StringBuilder scratch = new StringBuilder();
+
+  // Layout before each push of the best order so far, a candidate order is
+  // only replayed from the first push it changes
+  private int[] playerBefore;
+  private short[][] boxesBefore;
+  private int[] movesBefore;
+
+  SolutionOptimizer(Board board) {
+    this.board = board;
+    this.reach = new PlayerReach(board);
+  }
+
+  // Fewest pushes first, then fewest moves, never worse than the solution given
+  String optimize(String solution, int player, short[] boxes, long deadline) {
+    int[] given = parse(solution, player, boxes);
+    if (given == null) return solution; // Not a solution of this level, leave it alone
+    int[] pushes = dropCycles(given, player, boxes);
+    pushes = reorder(pushes, player, boxes, deadline);
+
+    StringBuilder moves = new StringBuilder();
+    for (int push : pushes) {
+      int box = State.pushedBox(push), direction = State.direction(push);
+      reach.walk(player, board.next[box * 4 + Board.opposite(direction)], boxes, moves);
+      moves.append(Board.moves[direction]);
+      boxes = Board.moveBox(boxes, Board.indexOf(boxes, box), board.next[box * 4 + direction]);
+      player = box;
+    }
+    boolean better = pushes.length < given.length
+            || (pushes.length == given.length && moves.length() < solution.length());
+    return better ? moves.toString() : solution;
+  }
+
+  // Pushes of the solution in order, null if it is not a legal solution
+  private int[] parse(String solution, int player, short[] boxes) {
+    int[] pushes = new int[16];
+    int count = 0;
+    for (int i = 0; i < solution.length(); i++) {
+      int direction = new String(Board.moves).indexOf(solution.charAt(i));
+      if (direction < 0) return null;
+      int next = board.next[player * 4 + direction];
+      if (next < 0) return null;
+      int index = Board.indexOf(boxes, next);
+      if (index >= 0) {
+        int to = board.next[next * 4 + direction];
+        if (to < 0 || Board.indexOf(boxes, to) >= 0) return null;
+        if (count == pushes.length) pushes = Arrays.copyOf(pushes, count * 2);
+        pushes[count++] = State.pushMove(next, direction);
+        boxes = Board.moveBox(boxes, index, to);
+      }
+      player = next;
+    }
+    return board.isSolved(boxes) ? Arrays.copyOf(pushes, count) : null;
+  }
+
+  // Cuts out stretches of pushes that end on the layout they started from
+  // with the player free to walk to the same squares, until none is left
+  private int[] dropCycles(int[] pushes, int player, short[] boxes) {
+    while (true) {
+      Map<Long, Integer> seen = new HashMap<>();
+      short[][] layouts = new short[pushes.length + 1][];
+      int[] regions = new int[pushes.length + 1];
+      int at = player;
+      short[] layout = boxes;
+      int from = -1, to = -1;
+      for (int k = 0; k <= pushes.length && from < 0; k++) {
+        layouts[k] = layout;
+        regions[k] = reach.fill(at, layout);
+        Integer earlier = seen.put(board.hashBoxes(layout) ^ board.playerKeys[regions[k]], k);
+        if (earlier != null && regions[earlier] == regions[k] && Arrays.equals(layouts[earlier], layout)) {
+          from = earlier;
+          to = k;
+        } else if (k < pushes.length) {
+          int box = State.pushedBox(pushes[k]);
+          layout = Board.moveBox(layout, Board.indexOf(layout, box), board.next[box * 4 + State.direction(pushes[k])]);
+          at = box;
+        }
+      }
+      if (from < 0) return pushes;
+
+      int[] shorter = new int[pushes.length - (to - from)];
+      System.arraycopy(pushes, 0, shorter, 0, from);
+      System.arraycopy(pushes, to, shorter, from, pushes.length - to);
+      pushes = shorter;
+    }
+  }
+
+  // Hill climbing over the order of the runs, first improvement wins
+  private int[] reorder(int[] pushes, int player, short[] boxes, long deadline) {
+    playerBefore = new int[pushes.length + 1];
+    boxesBefore = new short[pushes.length + 1][];
+    movesBefore = new int[pushes.length + 1];
+    playerBefore[0] = player;
+    boxesBefore[0] = boxes;
+    int best = replay(pushes, 0, Integer.MAX_VALUE, true);
+
+    boolean improved = true;
+    while (improved) {
+      improved = false;
+      int[] starts = runStarts(pushes);
+      int runs = starts.length - 1;
+      for (int r = 0; r < runs && !improved; r++) {
+        for (int shift = -WINDOW; shift <= WINDOW && !improved; shift++) {
+          int t = r + shift;
+          if (shift == 0 || t < 0 || t >= runs) continue;
+          if (System.nanoTime() - deadline >= 0) return pushes;
+          int[] candidate = moveRun(pushes, starts, r, t);
+          int moves = replay(candidate, starts[Math.min(r, t)], best, false);
+          if (moves < 0) continue;
+          best = moves;
+          pushes = candidate;
+          replay(pushes, 0, Integer.MAX_VALUE, true);
+          improved = true;
+        }
+      }
+    }
+    return pushes;
+  }
+
+  // Where each run of pushes on one box starts, then the number of pushes
+  private int[] runStarts(int[] pushes) {
+    int[] starts = new int[pushes.length + 1];
+    int count = 0;
+    for (int k = 0; k < pushes.length; k++) {
+      boolean sameBox = k > 0 && State.pushedBox(pushes[k])
+              == board.next[State.pushedBox(pushes[k - 1]) * 4 + State.direction(pushes[k - 1])];
+      if (!sameBox) starts[count++] = k;
+    }
+    starts[count++] = pushes.length;
+    return Arrays.copyOf(starts, count);
+  }
+
+  // Order with run r taken out and put back in the place of run t
+  private int[] moveRun(int[] pushes, int[] starts, int r, int t) {
+    int[] moved = new int[pushes.length];
+    int length = 0;
+    for (int run = 0; run < starts.length - 1; run++) {
+      if (run == r) continue;
+      if (run == t && t < r) length = copyRun(pushes, starts, r, moved, length);
+      length = copyRun(pushes, starts, run, moved, length);
+      if (run == t && t > r) length = copyRun(pushes, starts, r, moved, length);
+    }
+    return moved;
+  }
+
+  private static int copyRun(int[] pushes, int[] starts, int run, int[] out, int length) {
+    int size = starts[run + 1] - starts[run];
+    System.arraycopy(pushes, starts[run], out, length, size);
+    return length + size;
+  }
+
+  // Moves needed from push first on, the tables give the layout before it,
+  // -1 if a push is impossible, the level is not solved at the end or the
+  // count reaches limit
+  // With record set the tables are rewritten for this order
+  private int replay(int[] pushes, int first, int limit, boolean record) {
+    int player = playerBefore[first];
+    short[] boxes = boxesBefore[first];
+    int moves = movesBefore[first];
+    for (int k = first; k < pushes.length; k++) {
+      if (record) {
+        playerBefore[k] = player;
+        boxesBefore[k] = boxes;
+        movesBefore[k] = moves;
+      }
+      int box = State.pushedBox(pushes[k]), direction = State.direction(pushes[k]);
+      int index = Board.indexOf(boxes, box);
+      int to = board.next[box * 4 + direction];
+      int behind = board.next[box * 4 + Board.opposite(direction)];
+      if (index < 0 || to < 0 || behind < 0 || Board.indexOf(boxes, to) >= 0) return -1;
+      scratch.setLength(0);
+      if (!reach.walk(player, behind, boxes, scratch)) return -1;
+      moves += scratch.length() + 1;
+      if (moves >= limit) return -1;
+      boxes = Board.moveBox(boxes, index, to);
+      player = box;
+    }
+    return board.isSolved(boxes) ? moves : -1;
+  }
+}
@@ -0,0 +1,56 @@
+package solver;
+
+// Plays a lurd solution on a level and reports what happened
+public class SolutionReplay {
+  public boolean legal;  // every move was possible
+  public boolean solved; // all boxes ended on goals
+  public int moves;
+  public int pushes;
+
+  public static SolutionReplay of(int width, int height, char[][] mapData, char[][] itemsData, String solution) {
+    SolutionReplay replay = new SolutionReplay();
+    char[][] items = new char[height][];
+    int row = -1, column = -1;
+    for (int y = 0; y < height; y++) {
+      items[y] = itemsData[y].clone();
+      for (int x = 0; x < width; x++) {
+        if (items[y][x] == '@') {
+          row = y;
+          column = x;
+        }
+      }
+    }
+    if (row < 0) return replay;
+
+    for (int i = 0; i < solution.length(); i++) {
+      int direction = new String(Board.moves).indexOf(solution.charAt(i));
+      if (direction < 0) return replay;
+      int nextRow = row + Board.dy[direction], nextColumn = column + Board.dx[direction];
+      if (isBlocked(width, height, mapData, nextRow, nextColumn)) return replay;
+      if (items[nextRow][nextColumn] == '$') {
+        int boxRow = nextRow + Board.dy[direction], boxColumn = nextColumn + Board.dx[direction];
+        if (isBlocked(width, height, mapData, boxRow, boxColumn) || items[boxRow][boxColumn] == '$') return replay;
+        items[boxRow][boxColumn] = '$';
+        replay.pushes++;
+      }
+      items[row][column] = ' ';
+      items[nextRow][nextColumn] = '@';
+      row = nextRow;
+      column = nextColumn;
+      replay.moves++;
+    }
+    replay.legal = true;
+
+    replay.solved = true;
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        if ((mapData[y][x] == '.') != (items[y][x] == '$')) replay.solved = false;
+      }
+    }
+    return replay;
+  }
+
+  private static boolean isBlocked(int width, int height, char[][] mapData, int row, int column) {
+    return row < 0 || row >= height || column < 0 || column >= width || mapData[row][column] == '#';
+  }
+}
@@ -0,0 +1,30 @@
+package solver;
+
+// Outcome of a solve: the solution if there is one, why not otherwise, and
+// the statistics gathered up to that point
+public class SolveResult {
+  public enum Status {
+    SOLVED,
+    TIMED_OUT,       // the token's deadline passed first
+    CANCELLED,       // the token was cancelled or the thread interrupted
+    UNSOLVABLE,      // the whole reachable state space was searched
+    MEMORY_EXCEEDED, // the explored table hit SolverOptions.memoryBudget
+    IO_ERROR         // the external search could not read or write its files
+  }
+
+  public final Status status;
+  // Empty unless solved, except that an anytime search stopped early hands
+  // back its best solution so far, statistics.solutionBound says how good it is
+  public final String solution;
+  public final SearchStatistics statistics;
+
+  public SolveResult(Status status, String solution, SearchStatistics statistics) {
+    this.status = status;
+    this.solution = solution;
+    this.statistics = statistics;
+  }
+
+  public boolean isSolved() {
+    return status == Status.SOLVED;
+  }
+}
@@ -0,0 +1,86 @@
+package solver;
+
+// Tunable settings for SokoBot, read when a solve starts
+public class SolverOptions {
+  public enum Algorithm {
+    ASTAR,        // best-first, keeps every explored state
+    IDA_STAR,     // iterative deepening over pushes, memory bounded by a transposition table
+    BIDIRECTIONAL, // pushes from the start and pulls from the goals until they meet
+    EXTERNAL,     // A* with its open and closed sets in files, for levels that outgrow memory
+    ANYTIME       // weighted A* with a falling weight, reports each better solution on the way
+  }
+
+  public enum Expansion {
+    STEP, // one player step per node
+    PUSH  // one push per node, player normalized to its reachable region
+  }
+
+  public enum Heuristic {
+    MANHATTAN,     // distance to the nearest goal, ignoring walls
+    PUSH_DISTANCE, // pushes to the nearest goal around walls, from the level tables
+    MATCHING,      // cheapest assignment of boxes to distinct goals by push distance
+    PATTERN_DATABASE // the matching or additive box-pair pushes, whichever is higher
+  }
+
+  public enum FrontierType {
+    HEAP,   // binary heap on the cached f value
+    BUCKET  // one bucket per integer f value
+  }
+
+  public Algorithm algorithm = Algorithm.ASTAR;
+  public Expansion expansion = Expansion.PUSH;
+  public Heuristic heuristic = Heuristic.MATCHING;
+  public FrontierType frontier = FrontierType.BUCKET;
+
+  // f = g + weight * h, 1 is plain A*, above 1 finds longer solutions sooner,
+  // 0 is breadth-first over pushes
+  public double weight = 1;
+
+  // Worker threads, more than one runs hash-distributed A* over pushes
+  // IDA* and bidirectional search always run on the calling thread
+  public int threads = 1;
+
+  // Anytime search starts at this weight and takes the step off after each
+  // solution until it reaches 1, see SearchContext.anytime
+  // The weight must be finite and the step above 0, or the solve throws
+  // IllegalArgumentException
+  public double anytimeWeight = 1.2;
+  public double anytimeWeightStep = 0.1;
+
+  // Bytes the solve's tables may use together before it gives up: the
+  // pattern database build gets a quarter, the search shares out what the
+  // kept table leaves over its closed sets and path arenas. The IDA*
+  // transposition table and the external search's sort buffer have their
+  // own sizes below.
+  public long memoryBudget = 256L * 1024 * 1024;
+
+  // Fixed size of the IDA* transposition table, allocated up front
+  public long transpositionBytes = 32L * 1024 * 1024;
+
+  // Where the external search keeps its files, null is the system temporary
+  // directory, and how much of a bucket it sorts in memory at once
+  public String externalDirectory = null;
+  public long externalSortBytes = 64L * 1024 * 1024;
+
+  // Deadlock tests run on every push, in this order, see PruningPipeline
+  // Corral tests cut nodes but cost more time than they save on most levels
+  public boolean pruneDeadSquares = true;
+  public boolean pruneFrozenBoxes = true;
+  public boolean pruneCorrals = false;
+
+  // Where pattern databases are cached between solves, one file per level
+  // layout, null builds them in memory every time
+  public String patternCacheDir = "pdb-cache";
+
+  // Macro moves from the level's static analysis, see MacroTable: boxes
+  // slide through one-wide tunnels and go straight to the next goal of a goal room
+  public boolean tunnelMacros = true;
+  public boolean goalRoomMacros = true;
+
+  // Milliseconds SolutionOptimizer may spend shortening each solution found,
+  // 0 hands the solution over as the search built it
+  public long optimizeMillis = 100;
+
+  // Milliseconds between snapshots handed to a ProgressListener
+  public long progressInterval = 250;
+}
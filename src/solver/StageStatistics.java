@@ -0,0 +1,13 @@
+package solver;
+
+// What one pruning stage did during a solve
+public class StageStatistics {
+  public final String name;
+  public long calls;
+  public long pruned;
+  public long nanos; // estimated from a timed sample of the calls
+
+  public StageStatistics(String name) {
+    this.name = name;
+  }
+}
@@ -0,0 +1,64 @@
+package solver;
+
+// State class to represent game state
+// Boxes are kept as a sorted array of cell indices and the state carries
+// its Zobrist hash for the explored table
+final class State {
+  int player;
+  short[] boxes;
+  long hash;
+  int cost;
+  int h; // heuristic, computed once when the state is generated
+  int f; // frontier priority, g + weight * h
+
+  // Move that led here, the direction in step mode and box cell << 2 | direction
+  // in push mode, plus the path arena node it was recorded as once accepted
+  int move;
+  int node = PathArena.NONE;
+
+  State(int player, short[] boxes, long hash, int cost, int move) {
+    this.player = player;
+    this.boxes = boxes;
+    this.hash = hash;
+    this.cost = cost;
+    this.move = move;
+  }
+
+  // Sets h and the priority, a weight above 1 trades optimality for speed
+  void score(int h, double weight) {
+    this.h = h;
+    this.f = cost + (weight == 1 ? h : (int) (weight * h));
+  }
+
+  static int pushMove(int box, int direction) {
+    return box << 2 | direction;
+  }
+
+  static int pushedBox(int move) {
+    return move >>> 2;
+  }
+
+  static int direction(int move) {
+    return move & 3;
+  }
+
+  // Macro moves take one box to a target cell in several pushes, the route
+  // is found again when the solution is rebuilt
+  private static final int MACRO = 1 << 30;
+
+  static int macroMove(int box, int target) {
+    return MACRO | target << 15 | box;
+  }
+
+  static boolean isMacro(int move) {
+    return (move & MACRO) != 0;
+  }
+
+  static int macroBox(int move) {
+    return move & 0x7FFF;
+  }
+
+  static int macroTarget(int move) {
+    return (move >>> 15) & 0x7FFF;
+  }
+}
@@ -0,0 +1,63 @@
+package solver;
+
+// Fixed-size table of states visited by IDA*, never grows past its budget
+// Slots come in pairs picked by the Zobrist hash; a new state replaces an
+// entry left over from an earlier iteration first, then the deeper of the
+// two, since shallow states cut off the largest subtrees. Only the 64-bit
+// hash is kept, so a collision could prune a state that was never seen.
+final class TranspositionTable {
+  private static final int BYTES_PER_ENTRY = 12;
+
+  private final long[] hashes;
+  private final int[] stamps; // iteration << 16 | cost, 0 for an empty slot
+  private final int mask;
+  private int size;
+
+  TranspositionTable(long budgetBytes) {
+    int capacity = 2;
+    while (capacity < (1 << 30) && capacity * 2L * BYTES_PER_ENTRY <= budgetBytes) capacity <<= 1;
+    hashes = new long[capacity];
+    stamps = new int[capacity];
+    mask = capacity - 2; // even slot of a pair
+  }
+
+  // Records a visit at the given cost, returns false if this iteration
+  // already reached the state at the same or a lower cost
+  // Iterations start at 1 and costs stay below 65536
+  boolean visit(long hash, int cost, int iteration) {
+    int slot = (int) (hash ^ (hash >>> 32)) & mask;
+    int stamp = iteration << 16 | cost;
+
+    for (int i = slot; i < slot + 2; i++) {
+      if (hashes[i] != hash || stamps[i] == 0) continue;
+      if ((stamps[i] >>> 16) == iteration && (stamps[i] & 0xFFFF) <= cost) return false;
+      stamps[i] = stamp;
+      return true;
+    }
+
+    int victim = pickVictim(slot, iteration);
+    if (stamps[victim] == 0) size++;
+    hashes[victim] = hash;
+    stamps[victim] = stamp;
+    return true;
+  }
+
+  private int pickVictim(int slot, int iteration) {
+    int first = stamps[slot], second = stamps[slot + 1];
+    if (first == 0 || (first >>> 16) != iteration) return slot;
+    if (second == 0 || (second >>> 16) != iteration) return slot + 1;
+    return (first & 0xFFFF) >= (second & 0xFFFF) ? slot : slot + 1;
+  }
+
+  int size() {
+    return size;
+  }
+
+  int capacity() {
+    return hashes.length;
+  }
+
+  long allocatedBytes() {
+    return (long) hashes.length * BYTES_PER_ENTRY;
+  }
+}
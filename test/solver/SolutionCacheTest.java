@@ -0,0 +1,150 @@
+package solver;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SolutionCacheTest {
+  // No two of its 8 rotations and reflections look alike
+  private static final String[] LEVEL = {
+          "##### ",
+          "#   ##",
+          "#  $@#",
+          "##$ .#",
+          " #  .#",
+          " #####"};
+
+  @Test
+  void everyOrientationGetsTheSolutionTurnedToFitIt() {
+    SolverOptions options = new SolverOptions();
+    SolutionCache cache = new SolutionCache(16, null);
+    char[][] tiles = tiles(LEVEL);
+    cache.put(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), options, solve(tiles, options));
+
+    Set<String> orientations = new HashSet<>();
+    for (int symmetry = 0; symmetry < 8; symmetry++) {
+      char[][] turned = turn(tiles, symmetry);
+      orientations.add(String.join("\n", rows(turned)));
+      String solution = cache.get(width(turned), turned.length, mapLayer(turned), itemsLayer(turned), options);
+      assertNotNull(solution, "orientation " + symmetry);
+      SolutionReplay replay = SolutionReplay.of(width(turned), turned.length, mapLayer(turned), itemsLayer(turned),
+              solution);
+      assertTrue(replay.legal && replay.solved, "orientation " + symmetry);
+    }
+    assertEquals(8, orientations.size());
+    assertEquals(8, cache.hits);
+  }
+
+  @Test
+  void entryThatNoLongerSolvesTheLevelIsAMiss() {
+    SolverOptions options = new SolverOptions();
+    SolutionCache cache = new SolutionCache(16, null);
+    char[][] tiles = tiles(LEVEL);
+    cache.put(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), options, "ll");
+
+    assertNull(cache.get(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), options));
+    assertEquals(0, cache.hits);
+    assertEquals(1, cache.misses);
+  }
+
+  @Test
+  void staleLineInTheStoreIsAMissAfterReopening(@TempDir Path directory) throws IOException {
+    SolverOptions options = new SolverOptions();
+    Path file = directory.resolve("solutions.cache");
+    char[][] tiles = tiles(LEVEL);
+    SolutionCache cache = new SolutionCache(16, file.toString());
+    cache.put(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), options, solve(tiles, options));
+    cache.close();
+
+    // Same key, a solution that walks into a wall
+    String line = Files.readAllLines(file).get(0);
+    Files.write(file, (line.substring(0, 17) + "uuuu\n").getBytes());
+    SolutionCache reopened = new SolutionCache(16, file.toString());
+    assertNull(reopened.get(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), options));
+    reopened.close();
+  }
+
+  @Test
+  void solutionIsOnlyReusedWithTheSameSettings() {
+    SolverOptions optimal = new SolverOptions();
+    SolverOptions weighted = new SolverOptions();
+    weighted.weight = 3;
+    SolutionCache cache = new SolutionCache(16, null);
+    char[][] tiles = tiles(LEVEL);
+    cache.put(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), weighted, solve(tiles, weighted));
+
+    assertNull(cache.get(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), optimal));
+    assertNotNull(cache.get(width(tiles), tiles.length, mapLayer(tiles), itemsLayer(tiles), weighted));
+  }
+
+  private static String solve(char[][] tiles, SolverOptions options) {
+    String solution = new SokoBot(options).solveSokobanPuzzle(width(tiles), tiles.length, mapLayer(tiles),
+            itemsLayer(tiles));
+    assertFalse(solution.isEmpty());
+    return solution;
+  }
+
+  // Same bits as the cache: 4 swaps x and y, then 1 mirrors x and 2 mirrors y
+  private static char[][] turn(char[][] tiles, int symmetry) {
+    boolean swap = (symmetry & 4) != 0;
+    int w = swap ? tiles.length : width(tiles), h = swap ? width(tiles) : tiles.length;
+    char[][] turned = new char[h][w];
+    for (int y = 0; y < h; y++) {
+      for (int x = 0; x < w; x++) {
+        int u = (symmetry & 1) != 0 ? w - 1 - x : x;
+        int v = (symmetry & 2) != 0 ? h - 1 - y : y;
+        turned[y][x] = swap ? tiles[u][v] : tiles[v][u];
+      }
+    }
+    return turned;
+  }
+
+  private static char[][] tiles(String[] rows) {
+    char[][] tiles = new char[rows.length][];
+    for (int y = 0; y < rows.length; y++) tiles[y] = rows[y].toCharArray();
+    return tiles;
+  }
+
+  private static String[] rows(char[][] tiles) {
+    String[] rows = new String[tiles.length];
+    for (int y = 0; y < tiles.length; y++) rows[y] = new String(tiles[y]);
+    return rows;
+  }
+
+  private static int width(char[][] tiles) {
+    return tiles[0].length;
+  }
+
+  private static char[][] mapLayer(char[][] tiles) {
+    char[][] layer = new char[tiles.length][width(tiles)];
+    for (int y = 0; y < tiles.length; y++) {
+      for (int x = 0; x < width(tiles); x++) {
+        char tile = tiles[y][x];
+        layer[y][x] = tile == '#' ? '#' : (tile == '.' || tile == '+' || tile == '*') ? '.' : ' ';
+      }
+    }
+    return layer;
+  }
+
+  private static char[][] itemsLayer(char[][] tiles) {
+    char[][] layer = new char[tiles.length][width(tiles)];
+    for (int y = 0; y < tiles.length; y++) {
+      for (int x = 0; x < width(tiles); x++) {
+        char tile = tiles[y][x];
+        layer[y][x] = (tile == '@' || tile == '+') ? '@' : (tile == '$' || tile == '*') ? '$' : ' ';
+      }
+    }
+    return layer;
+  }
+}